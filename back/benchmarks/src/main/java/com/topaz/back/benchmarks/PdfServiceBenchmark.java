@@ -0,0 +1,59 @@
+package com.topaz.back.benchmarks;
+
+import com.topaz.back.dtos.PatientDTO;
+import com.topaz.back.services.PdfService;
+import com.topaz.back.services.PdfTemplateRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and average time of the CNSS rendering paths, for empty, typical and long patient data.
+ * The services are wired by hand, without a Spring context or a database.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PdfServiceBenchmark {
+
+    @Param({"empty", "typical", "long"})
+    private String patientData;
+
+    @Param({"REWRITE", "APPEND"})
+    private PdfService.StampMode stampMode;
+
+    private PdfService pdfService;
+    private PatientDTO patient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        PdfTemplateRegistry templateRegistry = new PdfTemplateRegistry();
+        templateRegistry.init();
+        pdfService = new PdfService(templateRegistry, stampMode);
+        patient = switch (patientData) {
+            case "empty" -> new PatientDTO();
+            case "typical" -> new PatientDTO(1, "Alaoui", "Fatima", LocalDate.of(1984, 3, 12), "BE123456",
+                    "F", "12 Rue des Orangers, Maarif, Casablanca", "soin", "INP-0045", null);
+            case "long" -> new PatientDTO(2, "El Idrissi Benkirane ".repeat(4).trim(),
+                    "Mohammed Amine Abdelkarim ".repeat(4).trim(), LocalDate.of(1950, 12, 31), "AB9876543",
+                    "M", "Résidence Les Jardins, Immeuble 14, Appartement 27, ".repeat(4).trim(),
+                    "prothèse et orthodontie", "INP-000000012345", null);
+            default -> throw new IllegalArgumentException("Unknown patient data: " + patientData);
+        };
+    }
+
+    @Benchmark
+    public byte[] generateCnssPdf() throws IOException {
+        return pdfService.generateCnssPdfWithPatientData(patient);
+    }
+
+    @Benchmark
+    public byte[] generateDebugPdf() throws IOException {
+        return pdfService.generateDebugPdf(patient);
+    }
+}
@@ -1,17 +1,22 @@
 package com.topaz.back.components;
 
 import com.topaz.back.services.JwtService;
+import com.topaz.back.services.TokenRevocationList;
+import com.topaz.back.services.UserTokenStamps;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -19,15 +24,37 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 @Component
-@RequiredArgsConstructor
 public class JwtAuthFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtAuthFilter.class);
 
+    /**
+     * Where the authenticated principal comes from: the user loaded from the database on every
+     * request, or the username and roles carried by the token itself.
+     */
+    public enum PrincipalMode { DATABASE, CLAIMS }
+
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final UserTokenStamps userTokenStamps;
+    private final TokenRevocationList tokenRevocationList;
+    private final PrincipalMode principalMode;
+
+    public JwtAuthFilter(JwtService jwtService,
+                         UserDetailsService userDetailsService,
+                         UserTokenStamps userTokenStamps,
+                         TokenRevocationList tokenRevocationList,
+                         @Value("${security.jwt.principal-mode:DATABASE}") PrincipalMode principalMode) {
+        this.jwtService = jwtService;
+        this.userDetailsService = userDetailsService;
+        this.userTokenStamps = userTokenStamps;
+        this.tokenRevocationList = tokenRevocationList;
+        this.principalMode = principalMode;
+        logger.info("JWT principal mode: {}", principalMode);
+    }
 
     @Override
     protected void doFilterInternal(
@@ -63,18 +90,20 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         }
 
         try {
-            // Extract username from token
-            String username = jwtService.extractUsername(jwt);
+            // Verify the token once (or find it already verified) and read everything from its claims
+            Claims claims = jwtService.parseAndVerify(jwt);
+            String username = claims.getSubject();
             logger.debug("Extracted username from token: {}", username);
-            
-            // If we have a username and no authentication is set yet
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                // Load user details
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-                logger.debug("Loaded user details for: {}", username);
+
+            if (tokenRevocationList.isRevoked(claims)) {
+                // Logged out: the token is refused until it expires
+                logger.warn("Revoked token used by: {}", username);
+            } else if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                UserDetails userDetails = loadPrincipal(claims, username);
                 
-                // Validate token
-                if (jwtService.isTokenValid(jwt, userDetails)) {
+                // Validate token; one issued before the user's last role or password change is refused
+                if (jwtService.isTokenValid(claims, userDetails)
+                        && userTokenStamps.isCurrent(username, jwtService.getIssuedAtMillis(claims))) {
                     // Create authentication token
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             userDetails,
@@ -98,4 +127,26 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * The principal for a verified token. In CLAIMS mode it is rebuilt from the token's roles
+     * without touching the database; tokens without roles fall back to loading the user.
+     */
+    private UserDetails loadPrincipal(Claims claims, String username) {
+        if (principalMode == PrincipalMode.CLAIMS) {
+            Object roles = claims.get("roles");
+            if (roles instanceof List<?> list) {
+                return User.withUsername(username)
+                        .password("")
+                        .authorities(list.stream()
+                                .map(role -> new SimpleGrantedAuthority(String.valueOf(role)))
+                                .toList())
+                        .build();
+            }
+            logger.debug("Token of {} carries no roles, loading the user", username);
+        }
+        UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+        logger.debug("Loaded user details for: {}", username);
+        return userDetails;
+    }
 }
@@ -0,0 +1,34 @@
+package com.topaz.back.components;
+
+import com.topaz.back.services.PatientSearchIndex;
+import com.topaz.back.services.PatientService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills the patient search index from the database at startup. Patients are streamed, so the
+ * load does not hold the whole table in memory on top of the index itself. Requests are served
+ * during the load; rows it reads are skipped when a write already indexed something newer.
+ */
+@Component
+@RequiredArgsConstructor
+public class PatientSearchIndexLoader implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PatientSearchIndexLoader.class);
+
+    private final PatientService patientService;
+    private final PatientSearchIndex patientSearchIndex;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.currentTimeMillis();
+        patientService.forEachPatient(0, patientSearchIndex::load);
+        patientSearchIndex.markReady();
+        LOGGER.info("Indexed {} patient(s) for search in {} ms",
+                patientSearchIndex.size(), System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,63 @@
+package com.topaz.back.components;
+
+import com.topaz.back.entities.Patient;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Moves the patient id allocator past the ids already in the table. Patients created before ids
+ * came from patients_seq got theirs from AUTO_INCREMENT, and the allocator must never hand those
+ * out again. Runs before the web server starts, and only ever moves the allocator forward.
+ */
+@Component
+@RequiredArgsConstructor
+public class PatientSequenceInitializer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PatientSequenceInitializer.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void init() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        try {
+            transaction.begin();
+            long maxId = ((Number) entityManager.createNativeQuery("select coalesce(max(id), 0) from patients")
+                    .getSingleResult()).longValue();
+            // With the pooled optimizer the stored value is the upper end of the next block
+            long required = maxId + Patient.ID_ALLOCATION_SIZE + 1;
+
+            List<?> current = entityManager.createNativeQuery("select next_val from patients_seq for update")
+                    .getResultList();
+            if (current.isEmpty()) {
+                entityManager.createNativeQuery("insert into patients_seq (next_val) values (?1)")
+                        .setParameter(1, required)
+                        .executeUpdate();
+                LOGGER.info("Initialized patient id allocator at {}", required);
+            } else if (((Number) current.get(0)).longValue() < required) {
+                entityManager.createNativeQuery("update patients_seq set next_val = ?1")
+                        .setParameter(1, required)
+                        .executeUpdate();
+                LOGGER.info("Moved patient id allocator past existing id {} to {}", maxId, required);
+            }
+            transaction.commit();
+        } catch (RuntimeException e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            LOGGER.error("Could not align patient id allocator: {}", e.getMessage(), e);
+            throw e;
+        } finally {
+            entityManager.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.topaz.back.components;
+
+import com.topaz.back.dtos.PatientDTO;
+import com.topaz.back.entities.User;
+import com.topaz.back.services.JwtService;
+import com.topaz.back.services.PdfService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional warm-up of the PDF and JWT hot paths, so class loading, font initialization and JIT
+ * compilation happen before real traffic arrives. The application reports itself as refusing
+ * traffic until the warm-up is done, so the readiness probe (/actuator/health/readiness) keeps a
+ * load balancer from routing requests to a cold instance during a rolling restart.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.warmup.enabled", havingValue = "true")
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupWarmup.class);
+
+    private static final List<PatientDTO> SYNTHETIC_PATIENTS = List.of(
+            new PatientDTO(null, "Warmup", "Patient", LocalDate.of(1980, 1, 1), "WU000001",
+                    "M", "1 Rue de l'Exemple, Casablanca", "soin", "INP-0001", null),
+            new PatientDTO(null, "Warmup", "Patiente", LocalDate.of(1992, 6, 15), "WU000002",
+                    "F", "2 Boulevard d'Anfa, Casablanca", "prothèse", "INP-0002", null),
+            new PatientDTO(null, "Warmup", "Enfant", LocalDate.of(2012, 9, 30), "WU000003",
+                    "M", "3 Avenue Hassan II, Casablanca", "orthodontie", "INP-0003", null),
+            new PatientDTO()
+    );
+
+    private final PdfService pdfService;
+    private final JwtService jwtService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.warmup.iterations:20}")
+    private int iterations;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        try {
+            warmUp();
+        } finally {
+            AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+    }
+
+    private void warmUp() throws Exception {
+        LOGGER.info("Starting warm-up ({} iteration(s))", iterations);
+        long start = System.nanoTime();
+
+        timed("CNSS PDF", () -> {
+            for (PatientDTO patient : SYNTHETIC_PATIENTS) {
+                pdfService.writeCnssPdf(patient, OutputStream.nullOutputStream());
+            }
+        });
+        timed("debug PDF", () -> pdfService.writeDebugPdf(SYNTHETIC_PATIENTS.get(0), OutputStream.nullOutputStream()));
+
+        User user = User.builder().username("warmup").password("").role("USER").build();
+        Map<String, Object> claims = Map.of("roles", List.of("ROLE_USER"));
+        timed("JWT", () -> {
+            String token = jwtService.generateToken(claims, user);
+            if (!jwtService.isTokenValid(token, user)) {
+                throw new IllegalStateException("Warm-up token failed validation");
+            }
+        });
+
+        LOGGER.info("Warm-up completed in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void timed(String name, WarmupTask task) throws Exception {
+        long first = System.nanoTime();
+        task.run();
+        long firstMs = (System.nanoTime() - first) / 1_000_000;
+
+        long rest = System.nanoTime();
+        for (int i = 1; i < iterations; i++) {
+            task.run();
+        }
+        double averageMs = iterations > 1 ? (System.nanoTime() - rest) / 1_000_000.0 / (iterations - 1) : firstMs;
+        LOGGER.info("Warm-up {}: first run {} ms, then {} ms on average", name, firstMs,
+                String.format("%.2f", averageMs));
+    }
+
+    @FunctionalInterface
+    private interface WarmupTask {
+        void run() throws Exception;
+    }
+}
@@ -33,9 +33,9 @@ public class CorsConfig {
                 LOGGER.info("Configuring CORS with allowed origins: {}", ALLOWED_ORIGINS);
                 registry.addMapping("/**")
                         .allowedOrigins(ALLOWED_ORIGINS.toArray(new String[0]))
-                        .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS", "HEAD")
-                        .allowedHeaders("Authorization", "Content-Type", "Accept", "Origin", "X-Requested-With")
-                        .exposedHeaders("Authorization")
+                        .allowedMethods("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS", "HEAD")
+                        .allowedHeaders("Authorization", "Content-Type", "Accept", "Origin", "X-Requested-With", "If-Match")
+                        .exposedHeaders("Authorization", "Location", "Retry-After", "ETag", "X-Missing-Patient-Ids")
                         .allowCredentials(true)
                         .maxAge(3600);
             }
@@ -46,13 +46,13 @@ public class CorsConfig {
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(ALLOWED_ORIGINS);
-        configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "HEAD"));
+        configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE", "OPTIONS", "HEAD"));
         configuration.setAllowedHeaders(Arrays.asList(
                 "Authorization", "Content-Type", "Accept", "Origin",
-                "X-Requested-With", "Access-Control-Request-Method",
+                "X-Requested-With", "If-Match", "Access-Control-Request-Method",
                 "Access-Control-Request-Headers"
         ));
-        configuration.setExposedHeaders(List.of("Authorization"));
+        configuration.setExposedHeaders(List.of("Authorization", "Location", "Retry-After", "ETag", "X-Missing-Patient-Ids"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
 
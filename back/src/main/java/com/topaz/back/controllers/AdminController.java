@@ -0,0 +1,163 @@
+package com.topaz.back.controllers;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.topaz.back.dtos.CacheStatsDTO;
+import com.topaz.back.dtos.CnssExportDTO;
+import com.topaz.back.dtos.PasswordChangeRequest;
+import com.topaz.back.dtos.PasswordHashingStatsDTO;
+import com.topaz.back.dtos.RoleChangeRequest;
+import com.topaz.back.entities.User;
+import com.topaz.back.services.CnssExportService;
+import com.topaz.back.services.JwtService;
+import com.topaz.back.services.PatientCache;
+import com.topaz.back.services.PdfRenderCache;
+import com.topaz.back.services.PooledPasswordEncoder;
+import com.topaz.back.services.UserDetailsServiceImpl;
+import com.topaz.back.services.UserService;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+public class AdminController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdminController.class);
+
+    private final CnssExportService cnssExportService;
+    private final PatientCache patientCache;
+    private final PdfRenderCache pdfRenderCache;
+    private final JwtService jwtService;
+    private final UserService userService;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final PooledPasswordEncoder passwordEncoder;
+
+    @Value("${security.password.retry-after-seconds:2}")
+    private int retryAfterSeconds;
+
+    /**
+     * Start the bulk CNSS export, or resume the last one if it did not complete
+     */
+    @PostMapping("/cnss-export")
+    public ResponseEntity<CnssExportDTO> startCnssExport() {
+        LOGGER.info("Starting CNSS bulk export");
+        try {
+            Optional<CnssExportService.ExportRun> run = cnssExportService.start();
+            if (run.isEmpty()) {
+                LOGGER.warn("CNSS bulk export already running");
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(cnssExportService.getCurrentRun().map(this::toDTO).orElse(null));
+            }
+            return ResponseEntity.accepted().body(toDTO(run.get()));
+        } catch (IOException e) {
+            LOGGER.error("Could not start CNSS bulk export: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/cnss-export")
+    public ResponseEntity<CnssExportDTO> getCnssExport() {
+        return cnssExportService.getCurrentRun()
+                .map(run -> ResponseEntity.ok(toDTO(run)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Change a user's role. Their current tokens are refused from now on and they must log in again.
+     */
+    @PutMapping("/users/{username}/role")
+    public ResponseEntity<Map<String, String>> changeUserRole(@PathVariable String username,
+                                                              @RequestBody RoleChangeRequest request) {
+        LOGGER.info("Changing role of user {} to {}", username, request.getRole());
+        try {
+            User user = userService.changeRole(username, request.getRole());
+            return ResponseEntity.ok(Map.of("username", user.getUsername(), "role", user.getRole()));
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid role change for user {}: {}", username, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Reset a user's password. Their current tokens are refused from now on.
+     */
+    @PutMapping("/users/{username}/password")
+    public ResponseEntity<Void> changeUserPassword(@PathVariable String username,
+                                                   @RequestBody PasswordChangeRequest request) {
+        LOGGER.info("Changing password of user {}", username);
+        try {
+            userService.changePassword(username, request.getPassword());
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Invalid password change for user {}: {}", username, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .build();
+        }
+    }
+
+    /**
+     * BCrypt work factor, pool usage and hash latency since startup
+     */
+    @GetMapping("/password-hashing")
+    public ResponseEntity<PasswordHashingStatsDTO> getPasswordHashing() {
+        return ResponseEntity.ok(passwordEncoder.getStats());
+    }
+
+    /**
+     * Size and hit/miss/eviction counters of the in-memory caches since startup
+     */
+    @GetMapping("/caches")
+    public ResponseEntity<List<CacheStatsDTO>> getCaches() {
+        return ResponseEntity.ok(List.of(
+                toDTO("patients-by-id", patientCache.getByIdSize(), patientCache.getByIdStats()),
+                toDTO("patients-by-cin", patientCache.getByCinSize(), patientCache.getByCinStats()),
+                toDTO("cnss-pdf", pdfRenderCache.getSize(), pdfRenderCache.getStats()),
+                toDTO("jwt-verified-tokens", jwtService.getVerifiedTokenCount(), jwtService.getVerifiedTokenStats()),
+                toDTO("user-details", userDetailsService.getSize(), userDetailsService.getStats())));
+    }
+
+    private CacheStatsDTO toDTO(String name, long size, CacheStats stats) {
+        return CacheStatsDTO.builder()
+                .name(name)
+                .size(size)
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictionCount(stats.evictionCount())
+                .build();
+    }
+
+    private CnssExportDTO toDTO(CnssExportService.ExportRun run) {
+        return CnssExportDTO.builder()
+                .status(run.getStatus().name())
+                .runDate(run.getRunDate())
+                .directory(run.getDirectory().toAbsolutePath().toString())
+                .lastPatientId(run.getLastPatientId())
+                .exported(run.getExported())
+                .failed(run.getFailed())
+                .startedAt(run.getStartedAt())
+                .finishedAt(run.getFinishedAt())
+                .error(run.getError())
+                .build();
+    }
+}
@@ -5,10 +5,15 @@ import com.topaz.back.dtos.AuthResponse;
 import com.topaz.back.dtos.RegisterRequest;
 import com.topaz.back.entities.User;
 import com.topaz.back.services.JwtService;
+import com.topaz.back.services.TokenRevocationList;
 import com.topaz.back.services.UserService;
+import com.topaz.back.services.UserTokenStamps;
+import io.jsonwebtoken.Claims;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -22,6 +27,7 @@ import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -34,6 +40,11 @@ public class AuthController {
     private final AuthenticationManager authenticationManager;
     private final JwtService jwtService;
     private final UserService userService;
+    private final TokenRevocationList tokenRevocationList;
+    private final UserTokenStamps userTokenStamps;
+
+    @Value("${security.password.retry-after-seconds:2}")
+    private int retryAfterSeconds;
 
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody AuthRequest request) {
@@ -74,6 +85,8 @@ public class AuthController {
             logger.warn("Login failed for user {}: Bad credentials", request.getUsername());
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                 .body(Map.of("error", "Invalid username or password"));
+        } catch (RejectedExecutionException e) {
+            return busy(request.getUsername());
         } catch (Exception e) {
             logger.error("Login error for user {}: {}", request.getUsername(), e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -89,6 +102,8 @@ public class AuthController {
             User user = userService.register(request);
             logger.info("Registration successful for user: {}", request.getUsername());
             return ResponseEntity.ok(user);
+        } catch (RejectedExecutionException e) {
+            return busy(request.getUsername());
         } catch (Exception e) {
             logger.error("Registration error for user {}: {}", request.getUsername(), e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -96,6 +111,38 @@ public class AuthController {
         }
     }
     
+    /**
+     * Revoke the caller's token: it is refused from now on, until it would have expired
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestHeader(value = "Authorization", required = false) String authHeader) {
+        logger.info("Logout request");
+        
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Invalid authorization header"));
+        }
+        
+        Claims claims;
+        try {
+            claims = jwtService.parseAndVerify(authHeader.substring(7));
+        } catch (Exception e) {
+            // Expired or invalid tokens are refused anyway, nothing to revoke
+            logger.warn("Logout with an invalid token: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Invalid token"));
+        }
+        
+        try {
+            tokenRevocationList.revoke(claims);
+            logger.info("Logout successful for user: {}", claims.getSubject());
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            logger.warn("Logout for user {} failed: {}", claims.getSubject(), e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
     @GetMapping("/validate")
     public ResponseEntity<?> validateToken(@RequestHeader("Authorization") String authHeader) {
         logger.info("Token validation request");
@@ -107,9 +154,12 @@ public class AuthController {
             }
             
             String token = authHeader.substring(7);
-            String username = jwtService.extractUsername(token);
+            Claims claims = jwtService.parseAndVerify(token);
+            String username = claims.getSubject();
             
-            if (username != null) {
+            // Revoked, or issued before the user's last role or password change
+            if (username != null && !tokenRevocationList.isRevoked(claims)
+                    && userTokenStamps.isCurrent(username, jwtService.getIssuedAtMillis(claims))) {
                 return ResponseEntity.ok(Map.of("valid", true, "username", username));
             } else {
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
@@ -121,4 +171,14 @@ public class AuthController {
                 .body(Map.of("valid", false, "error", e.getMessage()));
         }
     }
+
+    /**
+     * Password hashing is saturated: the client should try again shortly
+     */
+    private ResponseEntity<?> busy(String username) {
+        logger.warn("Password hashing busy, refusing request for user: {}", username);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+            .body(Map.of("error", "Too many authentication requests, please retry"));
+    }
 }
@@ -1,20 +1,44 @@
 package com.topaz.back.controllers;
 
+import com.topaz.back.dtos.BulkResultDTO;
+import com.topaz.back.dtos.CnssBatchRequest;
 import com.topaz.back.dtos.PatientDTO;
+import com.topaz.back.dtos.PatientFilter;
+import com.topaz.back.dtos.PatientBulkRequest;
+import com.topaz.back.dtos.PatientImportResultDTO;
+import com.topaz.back.dtos.PatientPageDTO;
+import com.topaz.back.services.PatientExportService;
+import com.topaz.back.services.PatientImportService;
+import com.topaz.back.services.PatientSearchIndex;
 import com.topaz.back.services.PatientService;
+import com.topaz.back.services.PdfBatchService;
+import com.topaz.back.services.PdfRenderCache;
 import com.topaz.back.services.PdfService;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/patients")
@@ -25,6 +49,26 @@ public class PatientController {
 
     private final PatientService patientService;
     private final PdfService pdfService;
+    private final PdfBatchService pdfBatchService;
+    private final PdfRenderCache pdfRenderCache;
+    private final PatientExportService patientExportService;
+    private final PatientImportService patientImportService;
+    private final PatientSearchIndex patientSearchIndex;
+
+    @Value("${pdf.batch.max-size:200}")
+    private int maxBatchSize;
+
+    @Value("${patients.page.max-size:200}")
+    private int maxPageSize;
+
+    @Value("${patients.bulk.max-size:1000}")
+    private int maxBulkSize;
+
+    @Value("${patients.search.max-results:50}")
+    private int maxSearchResults;
+
+    @Value("${patients.export.timeout-ms:-1}")
+    private long exportTimeoutMs;
 
     @GetMapping
     public ResponseEntity<List<PatientDTO>> getAll() {
@@ -32,17 +76,106 @@ public class PatientController {
         return ResponseEntity.ok(patientService.getAllPatients());
     }
 
+    /**
+     * Keyset-paginated listing. Pass the returned {@code nextCursor} back as {@code cursor},
+     * with the same sort and filters, to get the following page.
+     */
+    @GetMapping("/page")
+    public ResponseEntity<PatientPageDTO> getPage(PatientFilter filter,
+                                                  @RequestParam(defaultValue = PatientService.SORT_BY_ID) String sort,
+                                                  @RequestParam(required = false) String cursor,
+                                                  @RequestParam(defaultValue = "50") int size) {
+        if (size < 1 || size > maxPageSize) {
+            LOGGER.error("Invalid patient page size: {}", size);
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            return ResponseEntity.ok(patientService.getPatientPage(filter, sort, cursor, size));
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid patient page request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Patients whose name or CIN match the words of {@code q}, tolerating small typos, best first.
+     * Served from the in-memory index; 503 while the index is still loading at startup.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<PatientDTO>> search(@RequestParam String q,
+                                                   @RequestParam(defaultValue = "10") int limit) {
+        if (q.isBlank() || limit < 1 || limit > maxSearchResults) {
+            LOGGER.error("Invalid patient search: q='{}', limit={}", q, limit);
+            return ResponseEntity.badRequest().build();
+        }
+        if (!patientSearchIndex.isReady()) {
+            LOGGER.warn("Patient search index not ready yet");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+        return ResponseEntity.ok(patientSearchIndex.search(q, limit));
+    }
+
+    /**
+     * Every patient, streamed as NDJSON (default) or CSV while it is read from the database. The
+     * whole table can take far longer than spring.mvc.async.request-timeout, so the export has its
+     * own timeout (patients.export.timeout-ms, none by default).
+     */
+    @GetMapping("/export")
+    public WebAsyncTask<Void> export(@RequestParam(defaultValue = "ndjson") String format,
+                                     HttpServletResponse response) {
+        LOGGER.info("Exporting all patients as {}", format);
+        HttpHeaders headers = new HttpHeaders();
+        StreamingResponseBody body;
+        switch (format.toLowerCase()) {
+            case "ndjson" -> {
+                headers.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+                headers.setContentDispositionFormData("attachment", "patients.ndjson");
+                body = patientExportService::writeNdjson;
+            }
+            case "csv" -> {
+                headers.setContentType(MediaType.parseMediaType("text/csv;charset=UTF-8"));
+                headers.setContentDispositionFormData("attachment", "patients.csv");
+                body = patientExportService::writeCsv;
+            }
+            default -> {
+                LOGGER.error("Unknown export format: {}", format);
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return null;
+            }
+        }
+        headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        // A StreamingResponseBody is always bound by the global async timeout, write the response directly
+        return new WebAsyncTask<>(exportTimeoutMs, () -> {
+            body.writeTo(response.getOutputStream());
+            response.flushBuffer();
+            return null;
+        });
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<PatientDTO> getById(@PathVariable Integer id) {
         LOGGER.info("Fetching patient with id: {}", id);
         return patientService.getPatientById(id)
-                .map(ResponseEntity::ok)
+                .map(patient -> ResponseEntity.ok().eTag(etag(patient.getVersion())).body(patient))
                 .orElseGet(() -> {
                     LOGGER.warn("Patient not found with id: {}", id);
                     return ResponseEntity.notFound().build();
                 });
     }
 
+    @GetMapping("/cin/{cin}")
+    public ResponseEntity<PatientDTO> getByCin(@PathVariable String cin) {
+        LOGGER.info("Fetching patient with CIN: {}", cin);
+        return patientService.getPatientByCin(cin)
+                .map(patient -> ResponseEntity.ok().eTag(etag(patient.getVersion())).body(patient))
+                .orElseGet(() -> {
+                    LOGGER.warn("Patient not found with CIN: {}", cin);
+                    return ResponseEntity.notFound().build();
+                });
+    }
+
     @PostMapping
     public ResponseEntity<PatientDTO> create(@RequestBody PatientDTO dto) {
         LOGGER.info("Creating patient: {} {}", dto.getNom(), dto.getPrenom());
@@ -54,20 +187,96 @@ public class PatientController {
         }
     }
 
+    /**
+     * Replace the patient. With an {@code If-Match} ETag from a previous read, the update only
+     * applies if nobody changed the patient since (412 otherwise).
+     */
     @PutMapping("/{id}")
-    public ResponseEntity<PatientDTO> update(@PathVariable Integer id, @RequestBody PatientDTO dto) {
+    public ResponseEntity<PatientDTO> update(@PathVariable Integer id, @RequestBody PatientDTO dto,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         LOGGER.info("Updating patient with id: {}", id);
         try {
-            return ResponseEntity.ok(patientService.updatePatient(id, dto));
+            PatientDTO updated = patientService.updatePatient(id, dto, expectedVersion(ifMatch));
+            return ResponseEntity.ok().eTag(etag(updated.getVersion())).body(updated);
         } catch (EntityNotFoundException e) {
             LOGGER.warn("Patient not found with id: {}", id);
             return ResponseEntity.notFound().build();
+        } catch (OptimisticLockingFailureException e) {
+            LOGGER.warn("Patient id {} changed since {}", id, ifMatch);
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
         } catch (IllegalArgumentException e) {
             LOGGER.error("Invalid patient data: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
         }
     }
 
+    /**
+     * Change only the fields present in the body, e.g. {@code {"adresse": "..."}}; null clears a
+     * field. Answers 204 with the new ETag, or 412 when {@code If-Match} no longer matches.
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<Void> patch(@PathVariable Integer id, @RequestBody Map<String, Object> fields,
+                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        LOGGER.info("Patching patient with id: {}", id);
+        try {
+            long version = patientService.patchPatient(id, fields, expectedVersion(ifMatch));
+            return ResponseEntity.noContent().eTag(etag(version)).build();
+        } catch (EntityNotFoundException e) {
+            LOGGER.warn("Patient not found with id: {}", id);
+            return ResponseEntity.notFound().build();
+        } catch (OptimisticLockingFailureException e) {
+            LOGGER.warn("Patient id {} changed since {}", id, ifMatch);
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid patient patch: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private static String etag(Long version) {
+        return "\"v" + version + "\"";
+    }
+
+    /**
+     * The version named by an {@code If-Match} header, or null when the header is absent or "*".
+     * A tag that is not one of ours (weak tags included) can never match, so it is turned into a
+     * version no row has.
+     */
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("\"v") && tag.endsWith("\"") && tag.length() > 3) {
+            try {
+                return Long.parseLong(tag.substring(2, tag.length() - 1));
+            } catch (NumberFormatException e) {
+                // Not one of ours
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * Bulk creation from a CSV (with header) or NDJSON body. Rows that fail validation or insertion
+     * are listed in the report; the others are imported.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<PatientImportResultDTO> importPatients(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body) throws IOException {
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+        LOGGER.info("Importing patients from {}", mediaType.getSubtype());
+        try {
+            PatientImportResultDTO result = mediaType.isCompatibleWith(MediaType.parseMediaType("text/csv"))
+                    ? patientImportService.importCsv(body)
+                    : patientImportService.importNdjson(body);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid patient import: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> delete(@PathVariable Integer id) {
         LOGGER.info("Deleting patient with id: {}", id);
@@ -80,31 +289,89 @@ public class PatientController {
         }
     }
 
+    /**
+     * Delete every listed patient in a single statement
+     */
+    @PostMapping("/bulk-delete")
+    public ResponseEntity<BulkResultDTO> bulkDelete(@RequestBody PatientBulkRequest request) {
+        List<Integer> ids = request != null ? request.getIds() : null;
+        if (!isValidBulk(ids)) {
+            return ResponseEntity.badRequest().build();
+        }
+        int deleted = patientService.deletePatients(ids);
+        return ResponseEntity.ok(BulkResultDTO.builder()
+                .requested((int) ids.stream().distinct().count())
+                .affected(deleted)
+                .build());
+    }
+
+    /**
+     * Set the same fields on every listed patient in a single statement, e.g.
+     * {@code {"ids": [1, 2], "fields": {"typedesoin": "prothese"}}}
+     */
+    @PostMapping("/bulk-update")
+    public ResponseEntity<BulkResultDTO> bulkUpdate(@RequestBody PatientBulkRequest request) {
+        List<Integer> ids = request != null ? request.getIds() : null;
+        if (!isValidBulk(ids)) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            int updated = patientService.updatePatients(ids, request.getFields());
+            return ResponseEntity.ok(BulkResultDTO.builder()
+                    .requested((int) ids.stream().distinct().count())
+                    .affected(updated)
+                    .build());
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid bulk patient update: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private boolean isValidBulk(List<Integer> ids) {
+        if (ids == null || ids.isEmpty() || ids.contains(null)) {
+            LOGGER.error("Invalid bulk patient request: no patient ids");
+            return false;
+        }
+        if (ids.size() > maxBulkSize) {
+            LOGGER.error("Bulk patient request of {} ids exceeds the limit of {}", ids.size(), maxBulkSize);
+            return false;
+        }
+        return true;
+    }
+
     @GetMapping("/{id}/cnss-pdf")
-    public ResponseEntity<byte[]> getCnssPdf(@PathVariable Integer id) {
+    public ResponseEntity<StreamingResponseBody> getCnssPdf(@PathVariable Integer id, WebRequest webRequest) {
         LOGGER.info("Generating CNSS PDF for patient id: {}", id);
         try {
             PatientDTO patient = patientService.getPatientById(id)
                     .orElseThrow(() -> new EntityNotFoundException("Patient not found with id: " + id));
 
-            byte[] pdfBytes = pdfService.generateCnssPdfWithPatientData(patient);
+            // The form only changes with the patient data and the printed date
+            LocalDate renderDate = LocalDate.now();
+            String etag = pdfRenderCache.etag(patient, renderDate);
+            if (webRequest.checkNotModified(etag)) {
+                LOGGER.info("CNSS PDF not modified for patient id: {}", id);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_PDF);
             headers.setContentDispositionFormData("attachment", "cnss_patient_" + id + ".pdf");
-            headers.setContentLength(pdfBytes.length);
 
-            LOGGER.info("CNSS PDF generated successfully for patient id: {}", id);
+            // Served from the render cache, or rendered straight into the response (chunked)
+            StreamingResponseBody body = out -> {
+                pdfRenderCache.writeCnssPdf(patient, renderDate, out);
+                LOGGER.info("CNSS PDF generated successfully for patient id: {}", id);
+            };
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(pdfBytes);
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache().cachePrivate())
+                    .body(body);
 
         } catch (EntityNotFoundException e) {
             LOGGER.warn("Patient not found with id: {}", id);
             return ResponseEntity.notFound().build();
-        } catch (IOException e) {
-            LOGGER.error("Failed to generate CNSS PDF for patient id: {}: {}", id, e.getMessage());
-            return ResponseEntity.status(500).build();
         } catch (Exception e) {
             LOGGER.error("Unexpected error generating CNSS PDF for patient id: {}: {}", id, e.getMessage());
             return ResponseEntity.status(500).build();
@@ -112,36 +379,70 @@ public class PatientController {
     }
 
     @GetMapping("/{id}/cnss-pdf-debug")
-    public ResponseEntity<byte[]> getCnssPdfDebug(@PathVariable Integer id) {
+    public ResponseEntity<StreamingResponseBody> getCnssPdfDebug(@PathVariable Integer id) {
         LOGGER.info("Generating debug CNSS PDF for patient id: {}", id);
         try {
             PatientDTO patient = patientService.getPatientById(id)
                     .orElseThrow(() -> new EntityNotFoundException("Patient not found with id: " + id));
 
-            byte[] pdfBytes = pdfService.generateDebugPdf(patient);
-
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.APPLICATION_PDF);
             headers.setContentDispositionFormData("attachment", "cnss_patient_debug_" + id + ".pdf");
-            headers.setContentLength(pdfBytes.length);
 
-            LOGGER.info("Debug CNSS PDF generated successfully for patient id: {}", id);
+            StreamingResponseBody body = out -> {
+                pdfService.writeDebugPdf(patient, out);
+                LOGGER.info("Debug CNSS PDF generated successfully for patient id: {}", id);
+            };
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(pdfBytes);
+                    .body(body);
 
         } catch (EntityNotFoundException e) {
             LOGGER.warn("Patient not found with id: {}", id);
             return ResponseEntity.notFound().build();
-        } catch (IOException e) {
-            LOGGER.error("Failed to generate debug CNSS PDF for patient id: {}: {}", id, e.getMessage());
-            return ResponseEntity.status(500).build();
         } catch (Exception e) {
             LOGGER.error("Unexpected error generating debug CNSS PDF for patient id: {}: {}", id, e.getMessage());
             return ResponseEntity.status(500).build();
         }
     }
 
+    @PostMapping("/cnss-pdf/batch")
+    public ResponseEntity<StreamingResponseBody> getCnssPdfBatch(@RequestBody CnssBatchRequest request) {
+        List<Integer> ids = request != null ? request.getIds() : null;
+        if (ids == null || ids.isEmpty() || ids.contains(null)) {
+            LOGGER.error("Invalid CNSS batch request: no patient ids");
+            return ResponseEntity.badRequest().build();
+        }
+        if (ids.size() > maxBatchSize) {
+            LOGGER.error("CNSS batch of {} patients exceeds the limit of {}", ids.size(), maxBatchSize);
+            return ResponseEntity.badRequest().build();
+        }
+        LOGGER.info("Generating CNSS PDF batch for {} patient(s)", ids.size());
+
+        List<PatientDTO> patients = patientService.getPatientsByIds(ids);
+        if (patients.isEmpty()) {
+            LOGGER.warn("None of the requested patients were found: {}", ids);
+            return ResponseEntity.notFound().build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_PDF);
+        headers.setContentDispositionFormData("attachment", "cnss_patients_batch.pdf");
+
+        Set<Integer> found = patients.stream().map(PatientDTO::getId).collect(Collectors.toSet());
+        List<Integer> missing = ids.stream().filter(id -> !found.contains(id)).distinct().toList();
+        if (!missing.isEmpty()) {
+            LOGGER.warn("Patients not found in CNSS batch: {}", missing);
+            headers.add("X-Missing-Patient-Ids",
+                    missing.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+
+        StreamingResponseBody body = out -> pdfBatchService.writeCnssBatch(patients, out);
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(body);
+    }
+
     // Global exception handler for unexpected errors
     @ExceptionHandler(Exception.class)
     public ResponseEntity<String> handleUnexpectedException(Exception e) {
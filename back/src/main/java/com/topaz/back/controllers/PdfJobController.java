@@ -0,0 +1,117 @@
+package com.topaz.back.controllers;
+
+import com.topaz.back.dtos.PatientDTO;
+import com.topaz.back.dtos.PdfJobDTO;
+import com.topaz.back.services.PatientService;
+import com.topaz.back.services.PdfJobService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/patients")
+@RequiredArgsConstructor
+public class PdfJobController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PdfJobController.class);
+    private static final String JOBS_PATH = "/api/patients/cnss-pdf/jobs/";
+
+    private final PatientService patientService;
+    private final PdfJobService pdfJobService;
+
+    @Value("${pdf.jobs.retry-after-seconds:5}")
+    private int retryAfterSeconds;
+
+    @Value("${pdf.jobs.max-wait-seconds:30}")
+    private int maxWaitSeconds;
+
+    @PostMapping("/{id}/cnss-pdf/jobs")
+    public ResponseEntity<PdfJobDTO> submit(@PathVariable Integer id) {
+        LOGGER.info("Submitting CNSS PDF job for patient id: {}", id);
+        Optional<PatientDTO> patient = patientService.getPatientById(id);
+        if (patient.isEmpty()) {
+            LOGGER.warn("Patient not found with id: {}", id);
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            PdfJobService.PdfJob job = pdfJobService.submit(patient.get());
+            return ResponseEntity.accepted()
+                    .location(URI.create(JOBS_PATH + job.getId()))
+                    .body(toDTO(job));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .build();
+        }
+    }
+
+    /**
+     * Job status. With {@code wait} > 0 the call is held (without a servlet thread) until the job
+     * finishes or the wait elapses.
+     */
+    @GetMapping("/cnss-pdf/jobs/{jobId}")
+    public CompletableFuture<ResponseEntity<PdfJobDTO>> getStatus(@PathVariable String jobId,
+                                                                  @RequestParam(defaultValue = "0") int wait) {
+        Optional<PdfJobService.PdfJob> job = pdfJobService.getJob(jobId);
+        if (job.isEmpty()) {
+            LOGGER.warn("PDF job not found: {}", jobId);
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
+        }
+        Duration waitFor = Duration.ofSeconds(Math.max(0, Math.min(wait, maxWaitSeconds)));
+        return pdfJobService.awaitJob(job.get(), waitFor)
+                .thenApply(current -> ResponseEntity.ok(toDTO(current)));
+    }
+
+    @GetMapping("/cnss-pdf/jobs/{jobId}/result")
+    public ResponseEntity<?> getResult(@PathVariable String jobId) {
+        Optional<PdfJobService.PdfJob> found = pdfJobService.getJob(jobId);
+        if (found.isEmpty()) {
+            LOGGER.warn("PDF job not found: {}", jobId);
+            return ResponseEntity.notFound().build();
+        }
+        PdfJobService.PdfJob job = found.get();
+        switch (job.getStatus()) {
+            case DONE -> {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_PDF);
+                headers.setContentDispositionFormData("attachment", "cnss_patient_" + job.getPatientId() + ".pdf");
+                headers.setContentLength(job.getResult().length);
+                return ResponseEntity.ok()
+                        .headers(headers)
+                        .body(job.getResult());
+            }
+            case FAILED -> {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(toDTO(job));
+            }
+            default -> {
+                return ResponseEntity.accepted()
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                        .body(toDTO(job));
+            }
+        }
+    }
+
+    private PdfJobDTO toDTO(PdfJobService.PdfJob job) {
+        return PdfJobDTO.builder()
+                .jobId(job.getId())
+                .patientId(job.getPatientId())
+                .status(job.getStatus().name())
+                .createdAt(job.getCreatedAt())
+                .finishedAt(job.getFinishedAt())
+                .error(job.getError())
+                .resultUrl(job.getStatus() == PdfJobService.Status.DONE ? JOBS_PATH + job.getId() + "/result" : null)
+                .build();
+    }
+}
@@ -0,0 +1,17 @@
+package com.topaz.back.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkResultDTO {
+    // Distinct ids in the request
+    private Integer requested;
+    // Rows actually deleted or updated; ids that do not exist are not counted
+    private Integer affected;
+}
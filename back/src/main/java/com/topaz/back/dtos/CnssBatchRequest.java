@@ -0,0 +1,10 @@
+package com.topaz.back.dtos;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CnssBatchRequest {
+    private List<Integer> ids;
+}
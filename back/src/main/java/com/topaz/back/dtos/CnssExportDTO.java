@@ -0,0 +1,25 @@
+package com.topaz.back.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CnssExportDTO {
+    private String status;
+    private LocalDate runDate;
+    private String directory;
+    private Integer lastPatientId;
+    private Integer exported;
+    private Integer failed;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+}
@@ -0,0 +1,44 @@
+package com.topaz.back.dtos;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Declarative description of a printable form, loaded from a JSON resource next to its template.
+ */
+@Data
+public class FormLayout {
+    private String name;
+    private String template;
+    private int page = 1;
+    private Font font = new Font();
+    private List<Field> fields = new ArrayList<>();
+
+    @Data
+    public static class Font {
+        private String name = "Helvetica";
+        private String encoding = "Cp1252";
+        private float size = 10;
+    }
+
+    /**
+     * A field is static text when {@code value} is set, a checkbox when one of {@code equals},
+     * {@code contains} or {@code otherwise} is set, and plain text taken from {@code source} otherwise.
+     */
+    @Data
+    public static class Field {
+        private String id;
+        private String label;
+        private float x;
+        private float y;
+        private String source;
+        private String value;
+        private String mark = "X";
+        private String equals;
+        private List<String> contains;
+        private String group;
+        private boolean otherwise;
+    }
+}
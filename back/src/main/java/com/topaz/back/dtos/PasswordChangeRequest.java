@@ -0,0 +1,8 @@
+package com.topaz.back.dtos;
+
+import lombok.Data;
+
+@Data
+public class PasswordChangeRequest {
+    private String password;
+}
@@ -0,0 +1,23 @@
+package com.topaz.back.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PasswordHashingStatsDTO {
+    private Integer strength;
+    private Integer threads;
+    private Integer activeHashes;
+    private Integer queueDepth;
+    private Long hashes;
+    private Double averageHashMillis;
+    private Double maxHashMillis;
+    private Double averageQueueWaitMillis;
+    // Hashes refused because the queue was full or they waited too long
+    private Long rejected;
+}
@@ -0,0 +1,15 @@
+package com.topaz.back.dtos;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Patients targeted by a bulk operation and, for a bulk update, the fields to set on all of them
+ */
+@Data
+public class PatientBulkRequest {
+    private List<Integer> ids;
+    private Map<String, Object> fields;
+}
@@ -18,4 +18,10 @@ public class PatientDTO {
     private String adresse;
     private String typedesoin;
     private String inp;
+    // Row version, also sent as the ETag; ignored on create
+    private Long version;
+
+    public PatientDTO copy() {
+        return new PatientDTO(id, nom, prenom, dateNaissance, cin, sexe, adresse, typedesoin, inp, version);
+    }
 }
@@ -0,0 +1,23 @@
+package com.topaz.back.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+/**
+ * Optional filters on the patient list, bound from query parameters. Unset fields do not filter.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PatientFilter {
+    private String typedesoin;
+    private String sexe;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate bornFrom;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate bornTo;
+}
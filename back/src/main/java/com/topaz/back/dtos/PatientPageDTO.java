@@ -0,0 +1,19 @@
+package com.topaz.back.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatientPageDTO {
+    private List<PatientDTO> items;
+    private int size;
+    // Pass back as "cursor" to get the next page; null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,22 @@
+package com.topaz.back.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PdfJobDTO {
+    private String jobId;
+    private Integer patientId;
+    private String status;
+    private Instant createdAt;
+    private Instant finishedAt;
+    private String error;
+    private String resultUrl;
+}
@@ -0,0 +1,8 @@
+package com.topaz.back.dtos;
+
+import lombok.Data;
+
+@Data
+public class RoleChangeRequest {
+    private String role; // USER ou ADMIN
+}
@@ -2,18 +2,34 @@ package com.topaz.back.entities;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.util.Date;
 
 @Entity
-@Table(name = "patients")
+// Indexes back the keyset pages: ordered by id or by (nom, prenom, id), filtered by type de soin or birth date
+@Table(name = "patients", indexes = {
+        @Index(name = "idx_patients_nom_prenom_id", columnList = "nom, prenom, id"),
+        @Index(name = "idx_patients_type_de_soin_id", columnList = "type_de_soin, id"),
+        @Index(name = "idx_patients_date_naissance", columnList = "date_naissance")
+})
+// Only used when the Hibernate second-level cache is switched on (see application.properties)
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "patients")
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
 @Setter
 public class Patient {
+    // Ids are allocated in blocks from the patients_seq table (MySQL has no sequences), so that
+    // Hibernate knows them before inserting and can batch the inserts
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "patients_seq")
+    @SequenceGenerator(name = "patients_seq", sequenceName = "patients_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Integer id;
 
     @Column(name = "nom", nullable = false)
@@ -40,4 +56,10 @@ public class Patient {
 
     @Column(name = "inp")
     private String inp;
+
+    // Optimistic lock, bumped by every update; existing rows start at 0
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private Long version;
 }
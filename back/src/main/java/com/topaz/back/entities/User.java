@@ -9,11 +9,12 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.List;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
@@ -32,6 +33,10 @@ public class User implements UserDetails {
     
     private String role;
 
+    // Tokens issued before this time are rejected (set when the role or password changes)
+    @Column(name = "tokens_valid_after")
+    private Instant tokensValidAfter;
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return role != null && !role.isEmpty() 
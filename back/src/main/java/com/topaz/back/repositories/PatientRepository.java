@@ -1,8 +1,57 @@
 package com.topaz.back.repositories;
 
 import com.topaz.back.entities.Patient;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface PatientRepository extends JpaRepository<Patient, Integer> {
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface PatientRepository extends JpaRepository<Patient, Integer>, JpaSpecificationExecutor<Patient> {
     boolean existsByCin(String cin);
+
+    @Query("select p.id from Patient p where p.cin = :cin")
+    Optional<Integer> findIdByCin(@Param("cin") String cin);
+
+    @Query("select p.version from Patient p where p.id = :id")
+    Optional<Long> findVersionById(@Param("id") Integer id);
+
+    /**
+     * Deletes the patients in one statement, without loading them first
+     *
+     * @return the number of patients deleted
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Patient p where p.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Streams patients in id order, starting after {@code afterId}. Must be consumed inside a
+     * transaction and closed. A fetch size of Integer.MIN_VALUE makes the MySQL driver stream rows
+     * one by one instead of buffering the whole result set.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Patient> findByIdGreaterThanOrderByIdAsc(Integer afterId);
+
+    /**
+     * Streams the CIN of every patient that has one, with the same constraints as above
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select p.cin from Patient p where p.cin is not null")
+    Stream<String> streamAllCins();
 }
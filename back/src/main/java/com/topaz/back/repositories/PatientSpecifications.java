@@ -0,0 +1,60 @@
+package com.topaz.back.repositories;
+
+import com.topaz.back.entities.Patient;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Query criteria for {@link PatientRepository}, evaluated by the database
+ */
+public final class PatientSpecifications {
+
+    private PatientSpecifications() {
+    }
+
+    public static Specification<Patient> matches(String typedesoin, String sexe, Date bornFrom, Date bornTo) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (typedesoin != null) {
+                predicates.add(cb.equal(root.get("typedesoin"), typedesoin));
+            }
+            if (sexe != null) {
+                predicates.add(cb.equal(root.get("sexe"), sexe));
+            }
+            if (bornFrom != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.<Date>get("dateNaissance"), bornFrom));
+            }
+            if (bornTo != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.<Date>get("dateNaissance"), bornTo));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * Patients after the given id, for keyset pagination ordered by id
+     */
+    public static Specification<Patient> idAfter(Integer id) {
+        return (root, query, cb) -> cb.greaterThan(root.get("id"), id);
+    }
+
+    /**
+     * Patients after the given row, for keyset pagination ordered by (nom, prenom, id). The leading
+     * {@code nom >= ?} lets the database range-scan the (nom, prenom, id) index instead of
+     * evaluating the disjunction on every row.
+     */
+    public static Specification<Patient> nameAfter(String nom, String prenom, Integer id) {
+        return (root, query, cb) -> cb.and(
+                cb.greaterThanOrEqualTo(root.get("nom"), nom),
+                cb.or(
+                        cb.greaterThan(root.get("nom"), nom),
+                        cb.and(cb.equal(root.get("nom"), nom), cb.greaterThan(root.get("prenom"), prenom)),
+                        cb.and(cb.equal(root.get("nom"), nom), cb.equal(root.get("prenom"), prenom),
+                                cb.greaterThan(root.get("id"), id))
+                ));
+    }
+}
@@ -3,9 +3,11 @@ package com.topaz.back.repositories;
 import com.topaz.back.entities.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByUsername(String username);
     boolean existsByUsername(String username);
+    List<User> findByTokensValidAfterIsNotNull();
 }
@@ -0,0 +1,186 @@
+package com.topaz.back.services;
+
+import com.topaz.back.repositories.PatientRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter over the CIN of every patient. A CIN the filter has never seen certainly does not
+ * exist, so duplicate checks only go to the database for the few CINs that might.
+ * <p>
+ * CINs are added as patients are created or updated. A Bloom filter cannot forget, so deleted or
+ * changed CINs stay in it as false positives (they only cost a database check) until the filter
+ * is rebuilt from the table, at startup and then periodically. Until the first build completes
+ * every CIN is reported as possibly present.
+ */
+@Service
+public class CinFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CinFilter.class);
+
+    private final PatientRepository patientRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final long expectedCins;
+    private final double falsePositiveRate;
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong negatives = new AtomicLong();
+    private volatile Bits bits;
+    // Filter being built by a rebuild; writes meanwhile go to both
+    private volatile Bits building;
+
+    public CinFilter(PatientRepository patientRepository,
+                     PlatformTransactionManager transactionManager,
+                     @Value("${patients.cin-filter.expected-cins:1000000}") long expectedCins,
+                     @Value("${patients.cin-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.patientRepository = patientRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.expectedCins = expectedCins;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    /**
+     * False when no patient has this CIN; true when one may have it
+     */
+    public boolean mightContain(String cin) {
+        Bits current = bits;
+        if (current == null) {
+            return true;
+        }
+        checks.incrementAndGet();
+        if (current.mightContain(hash(cin))) {
+            return true;
+        }
+        negatives.incrementAndGet();
+        return false;
+    }
+
+    public void put(String cin) {
+        if (cin == null || cin.isBlank()) {
+            return;
+        }
+        long hash = hash(cin);
+        Bits current = bits;
+        if (current != null) {
+            current.put(hash);
+        }
+        Bits next = building;
+        if (next != null) {
+            next.put(hash);
+        }
+    }
+
+    /**
+     * Build a fresh filter from the table and swap it in. Patients written while the table is read
+     * are added to the new filter as well, so none is missed.
+     */
+    @Scheduled(initialDelayString = "0", fixedDelayString = "${patients.cin-filter.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        try {
+            // Room for twice the current table, so the filter stays accurate until the next rebuild
+            long capacity = Math.max(expectedCins, 2 * patientRepository.count());
+            Bits next = Bits.create(capacity, falsePositiveRate);
+            building = next;
+            AtomicLong count = new AtomicLong();
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<String> cins = patientRepository.streamAllCins()) {
+                    cins.forEach(cin -> {
+                        next.put(hash(cin));
+                        count.incrementAndGet();
+                    });
+                }
+            });
+            bits = next;
+            LOGGER.info("CIN filter built with {} CIN(s) in {} ms ({} bits, {} hashes); since the last build "
+                            + "{} of {} check(s) were answered without the database",
+                    count, System.currentTimeMillis() - start, next.bitCount, next.hashes,
+                    negatives.getAndSet(0), checks.getAndSet(0));
+        } catch (RuntimeException e) {
+            // Keep the previous filter, if any: it is still correct, only less selective
+            LOGGER.error("Could not build CIN filter: {}", e.getMessage(), e);
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * 64-bit hash of the upper-cased CIN. The column compares case-insensitively, so two CINs that
+     * only differ in case must hit the same bits.
+     */
+    private static long hash(String cin) {
+        String key = cin.trim().toUpperCase(Locale.ROOT);
+        // FNV-1a, then the MurmurHash3 finalizer to spread the bits
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class Bits {
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashes;
+
+        private Bits(long bitCount, int hashes) {
+            this.words = new AtomicLongArray((int) ((bitCount + 63) / 64));
+            this.bitCount = bitCount;
+            this.hashes = hashes;
+        }
+
+        static Bits create(long capacity, double falsePositiveRate) {
+            // Optimal size and number of hash functions for the expected number of CINs
+            long bitCount = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            bitCount = Math.max(64, Math.min(bitCount, (long) Integer.MAX_VALUE * 64));
+            int hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            return new Bits(bitCount, hashes);
+        }
+
+        void put(long hash) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = index(hash, i);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long value;
+                while (((value = words.get(word)) & mask) == 0) {
+                    if (words.compareAndSet(word, value, value | mask)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        boolean mightContain(long hash) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = index(hash, i);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Double hashing: the i-th position is h1 + i * h2
+        private long index(long hash, int i) {
+            long combined = (hash & 0xffffffffL) + i * (hash >>> 32);
+            return Math.floorMod(combined, bitCount);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.topaz.back.services;
+
+import com.topaz.back.dtos.PatientDTO;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports the CNSS form of every patient to one file per patient in a local directory, for the
+ * month-end submission. Patients are streamed from the database in id order and rendered on a
+ * small dedicated pool, with only a few forms in flight at any time. Progress is checkpointed to
+ * disk so that an export interrupted by a restart resumes after the last exported patient.
+ */
+@Service
+public class CnssExportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CnssExportService.class);
+
+    private static final String CHECKPOINT_FILE = "checkpoint.properties";
+
+    public enum Status { RUNNING, COMPLETED, FAILED }
+
+    private final PatientService patientService;
+    private final PdfService pdfService;
+    private final Path directory;
+    private final int checkpointInterval;
+    private final ExecutorService renderExecutor;
+    private final ExecutorService runner;
+    private final int window;
+    private volatile ExportRun currentRun;
+
+    public CnssExportService(PatientService patientService,
+                             PdfService pdfService,
+                             @Value("${cnss.export.directory:exports/cnss}") String directory,
+                             @Value("${cnss.export.threads:2}") int threads,
+                             @Value("${cnss.export.checkpoint-interval:50}") int checkpointInterval) {
+        this.patientService = patientService;
+        this.pdfService = pdfService;
+        this.directory = Path.of(directory);
+        this.checkpointInterval = Math.max(1, checkpointInterval);
+        AtomicInteger counter = new AtomicInteger();
+        this.renderExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "cnss-export-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cnss-export-runner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.window = threads * 2;
+    }
+
+    /**
+     * Start an export in the background, resuming the previous one if it did not complete
+     *
+     * @return the started run, or empty when an export is already running
+     */
+    public synchronized Optional<ExportRun> start() throws IOException {
+        if (currentRun != null && currentRun.getStatus() == Status.RUNNING) {
+            return Optional.empty();
+        }
+        ExportRun run = prepareRun();
+        currentRun = run;
+        runner.execute(() -> execute(run));
+        return Optional.of(run);
+    }
+
+    public Optional<ExportRun> getCurrentRun() {
+        return Optional.ofNullable(currentRun);
+    }
+
+    @Scheduled(cron = "${cnss.export.cron:-}")
+    public void scheduledExport() {
+        try {
+            if (start().isEmpty()) {
+                LOGGER.warn("Scheduled CNSS export skipped, an export is already running");
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not start scheduled CNSS export: {}", e.getMessage(), e);
+        }
+    }
+
+    private ExportRun prepareRun() throws IOException {
+        Files.createDirectories(directory);
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(checkpoint)) {
+                properties.load(in);
+            }
+            if (!Boolean.parseBoolean(properties.getProperty("completed"))) {
+                // Keep the original render date so that every form of the export is consistent
+                LocalDate runDate = LocalDate.parse(properties.getProperty("runDate"));
+                ExportRun run = new ExportRun(runDate, runDirectory(runDate));
+                run.lastPatientId = Integer.parseInt(properties.getProperty("lastPatientId", "0"));
+                run.exported = Integer.parseInt(properties.getProperty("exported", "0"));
+                run.failed = Integer.parseInt(properties.getProperty("failed", "0"));
+                LOGGER.info("Resuming CNSS export of {} after patient id {} ({} already exported)",
+                        runDate, run.lastPatientId, run.exported);
+                return run;
+            }
+        }
+        LocalDate runDate = LocalDate.now();
+        LOGGER.info("Starting new CNSS export of {}", runDate);
+        return new ExportRun(runDate, runDirectory(runDate));
+    }
+
+    private Path runDirectory(LocalDate runDate) {
+        return directory.resolve("cnss-" + runDate);
+    }
+
+    private void execute(ExportRun run) {
+        long start = System.currentTimeMillis();
+        Deque<PendingForm> pending = new ArrayDeque<>();
+        try {
+            Files.createDirectories(run.directory);
+            writeCheckpoint(run, false);
+
+            patientService.forEachPatient(run.lastPatientId, patient -> {
+                pending.add(new PendingForm(patient.getId(), renderExecutor.submit(() -> writeForm(run, patient))));
+                if (pending.size() >= window) {
+                    complete(run, pending.poll());
+                }
+            });
+            while (!pending.isEmpty()) {
+                complete(run, pending.poll());
+            }
+
+            writeCheckpoint(run, true);
+            run.finish(Status.COMPLETED, null);
+            LOGGER.info("CNSS export of {} completed in {} ms: {} exported, {} failed",
+                    run.runDate, System.currentTimeMillis() - start, run.exported, run.failed);
+        } catch (Exception e) {
+            pending.forEach(form -> form.future().cancel(true));
+            Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+            run.finish(Status.FAILED, cause.getMessage());
+            LOGGER.error("CNSS export of {} stopped after patient id {}: {}",
+                    run.runDate, run.lastPatientId, cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Wait for the oldest form in flight. Forms complete in id order, so once it is written every
+     * patient up to its id has been handled and the checkpoint can move forward.
+     */
+    private void complete(ExportRun run, PendingForm form) {
+        try {
+            form.future().get();
+            run.exported++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("CNSS export interrupted", e);
+        } catch (ExecutionException e) {
+            run.failed++;
+            LOGGER.error("Could not export CNSS form of patient id {}: {}",
+                    form.patientId(), e.getCause().getMessage());
+        }
+        run.lastPatientId = form.patientId();
+        if ((run.exported + run.failed) % checkpointInterval == 0) {
+            try {
+                writeCheckpoint(run, false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Void writeForm(ExportRun run, PatientDTO patient) throws IOException {
+        Path target = run.directory.resolve("cnss-" + patient.getId() + ".pdf");
+        Path partial = run.directory.resolve("cnss-" + patient.getId() + ".pdf.part");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024)) {
+            pdfService.writeCnssPdf(patient, run.runDate, out);
+        }
+        // A form is either complete on disk or absent, never truncated
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return null;
+    }
+
+    private void writeCheckpoint(ExportRun run, boolean completed) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("runDate", run.runDate.toString());
+        properties.setProperty("lastPatientId", String.valueOf(run.lastPatientId));
+        properties.setProperty("exported", String.valueOf(run.exported));
+        properties.setProperty("failed", String.valueOf(run.failed));
+        properties.setProperty("completed", String.valueOf(completed));
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        properties.store(content, "CNSS export checkpoint");
+
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // The checkpoint on disk lets the next start resume where this one stopped
+        runner.shutdownNow();
+        renderExecutor.shutdownNow();
+    }
+
+    private record PendingForm(Integer patientId, Future<Void> future) {
+    }
+
+    public static final class ExportRun {
+        private final LocalDate runDate;
+        private final Path directory;
+        private final Instant startedAt = Instant.now();
+        private volatile Status status = Status.RUNNING;
+        private volatile Instant finishedAt;
+        private volatile int lastPatientId;
+        private volatile int exported;
+        private volatile int failed;
+        private volatile String error;
+
+        private ExportRun(LocalDate runDate, Path directory) {
+            this.runDate = runDate;
+            this.directory = directory;
+        }
+
+        private void finish(Status outcome, String error) {
+            this.error = error;
+            this.finishedAt = Instant.now();
+            this.status = outcome;
+        }
+
+        public LocalDate getRunDate() {
+            return runDate;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Instant getFinishedAt() {
+            return finishedAt;
+        }
+
+        public int getLastPatientId() {
+            return lastPatientId;
+        }
+
+        public int getExported() {
+            return exported;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.topaz.back.services;
+
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.ColumnText;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfStamper;
+import com.lowagie.text.pdf.PdfWriter;
+import com.topaz.back.dtos.FormLayout;
+import com.topaz.back.dtos.PatientDTO;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * A {@link FormLayout} compiled once into a reusable render plan. Static fields are drawn once
+ * into a one-page overlay that each document imports as a form XObject; the patient fields are
+ * resolved to plain operations and written in a single text block per document. Values the layout
+ * font cannot encode are drawn afterwards with the embedded Unicode font, right-to-left when they
+ * contain Arabic, so Latin-only documents are unchanged.
+ */
+public final class FormRenderPlan {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private final String name;
+    private final PdfTemplateRegistry.PdfTemplate template;
+    private final int page;
+    private final BaseFont font;
+    private final float fontSize;
+    private final List<FormLayout.Field> fields;
+    private final List<FieldOp> fieldOps;
+    private final PdfOverlay staticOverlay;
+    private final Font unicodeFont;
+
+    private FormRenderPlan(String name, PdfTemplateRegistry.PdfTemplate template, int page, BaseFont font,
+                           float fontSize, List<FormLayout.Field> fields, List<FieldOp> fieldOps,
+                           PdfOverlay staticOverlay, Font unicodeFont) {
+        this.name = name;
+        this.template = template;
+        this.page = page;
+        this.font = font;
+        this.fontSize = fontSize;
+        this.fields = fields;
+        this.fieldOps = fieldOps;
+        this.staticOverlay = staticOverlay;
+        this.unicodeFont = unicodeFont;
+    }
+
+    /**
+     * Compile a layout against its already loaded template. {@code unicodeFont} may be null, in
+     * which case text the layout font cannot encode is left out.
+     */
+    public static FormRenderPlan compile(FormLayout layout, PdfTemplateRegistry.PdfTemplate template, BaseFont font,
+                                         BaseFont unicodeFont) throws IOException {
+        if (layout.getPage() < 1 || layout.getPage() > template.getNumberOfPages()) {
+            throw new IOException("Layout " + layout.getName() + " targets page " + layout.getPage()
+                    + " but the template has " + template.getNumberOfPages() + " page(s)");
+        }
+
+        List<FormLayout.Field> staticFields = new ArrayList<>();
+        List<FieldOp> fieldOps = new ArrayList<>();
+        for (FormLayout.Field field : layout.getFields()) {
+            if (field.getValue() != null) {
+                staticFields.add(field);
+            } else {
+                fieldOps.add(new FieldOp(field.getX(), field.getY(), resolver(field, layout.getFields())));
+            }
+        }
+
+        float fontSize = layout.getFont().getSize();
+        Rectangle pageSize = template.getPageSize(layout.getPage());
+        PdfOverlay staticOverlay = staticFields.isEmpty()
+                ? null
+                : PdfOverlay.draw(pageSize, canvas -> {
+                    canvas.beginText();
+                    canvas.setFontAndSize(font, fontSize);
+                    for (FormLayout.Field field : staticFields) {
+                        canvas.setTextMatrix(field.getX(), field.getY());
+                        canvas.showText(field.getValue());
+                    }
+                    canvas.endText();
+                });
+
+        return new FormRenderPlan(layout.getName(), template, layout.getPage(), font, fontSize,
+                List.copyOf(layout.getFields()), List.copyOf(fieldOps), staticOverlay,
+                unicodeFont != null ? new Font(unicodeFont, fontSize) : null);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public PdfTemplateRegistry.PdfTemplate getTemplate() {
+        return template;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public Rectangle getPageSize() {
+        return template.getPageSize(page);
+    }
+
+    /**
+     * Every field of the layout, static ones included, in declaration order
+     */
+    public List<FormLayout.Field> getFields() {
+        return fields;
+    }
+
+    /**
+     * Stamp the static overlay and the patient fields onto the target page
+     */
+    public void render(PdfStamper stamper, PatientDTO patient, LocalDate renderDate) {
+        if (staticOverlay != null) {
+            staticOverlay.stampOnto(stamper, page);
+        }
+
+        PdfContentByte canvas = stamper.getOverContent(page);
+        List<FieldOp> unicodeOps = null;
+        List<String> unicodeTexts = null;
+
+        canvas.beginText();
+        canvas.setFontAndSize(font, fontSize);
+        for (FieldOp op : fieldOps) {
+            String text = op.resolver().apply(patient, renderDate);
+            if (text == null || text.trim().isEmpty()) {
+                continue;
+            }
+            if (!canEncode(font, text)) {
+                if (unicodeOps == null) {
+                    unicodeOps = new ArrayList<>();
+                    unicodeTexts = new ArrayList<>();
+                }
+                unicodeOps.add(op);
+                unicodeTexts.add(text);
+                continue;
+            }
+            canvas.setTextMatrix(op.x(), op.y());
+            canvas.showText(text);
+        }
+        canvas.endText();
+
+        if (unicodeOps != null && unicodeFont != null) {
+            for (int i = 0; i < unicodeOps.size(); i++) {
+                String text = unicodeTexts.get(i);
+                int runDirection = isRightToLeft(text) ? PdfWriter.RUN_DIRECTION_RTL : PdfWriter.RUN_DIRECTION_NO_BIDI;
+                // ALIGN_LEFT keeps the text starting at the field position whatever its direction
+                ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT, new Phrase(text, unicodeFont),
+                        unicodeOps.get(i).x(), unicodeOps.get(i).y(), 0, runDirection, 0);
+            }
+        }
+    }
+
+    private static boolean canEncode(BaseFont font, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!font.charExists(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isRightToLeft(String text) {
+        return text.codePoints().anyMatch(codePoint -> {
+            byte direction = Character.getDirectionality(codePoint);
+            return direction == Character.DIRECTIONALITY_RIGHT_TO_LEFT
+                    || direction == Character.DIRECTIONALITY_RIGHT_TO_LEFT_ARABIC;
+        });
+    }
+
+    private static BiFunction<PatientDTO, LocalDate, String> resolver(FormLayout.Field field,
+                                                                      List<FormLayout.Field> allFields) {
+        BiFunction<PatientDTO, LocalDate, String> source = source(field);
+
+        if (field.getEquals() != null) {
+            String expected = field.getEquals();
+            return check(source, value -> expected.equalsIgnoreCase(value), field.getMark());
+        }
+        if (field.getContains() != null) {
+            Predicate<String> matches = containsAny(field.getContains());
+            return check(source, value -> matches.test(value.toLowerCase(Locale.ROOT)), field.getMark());
+        }
+        if (field.isOtherwise()) {
+            // Checked when there is a value that none of the other checkboxes of the group matched
+            List<String> siblings = allFields.stream()
+                    .filter(other -> other != field && other.getContains() != null)
+                    .filter(other -> field.getGroup() != null && field.getGroup().equals(other.getGroup()))
+                    .flatMap(other -> other.getContains().stream())
+                    .toList();
+            Predicate<String> matchesSibling = containsAny(siblings);
+            return check(source, value -> !value.isEmpty() && !matchesSibling.test(value.toLowerCase(Locale.ROOT)),
+                    field.getMark());
+        }
+        return source;
+    }
+
+    private static BiFunction<PatientDTO, LocalDate, String> check(BiFunction<PatientDTO, LocalDate, String> source,
+                                                                   Predicate<String> checked, String mark) {
+        return (patient, renderDate) -> {
+            String value = source.apply(patient, renderDate);
+            return value != null && checked.test(value) ? mark : null;
+        };
+    }
+
+    private static Predicate<String> containsAny(List<String> needles) {
+        String[] lowered = needles.stream().map(needle -> needle.toLowerCase(Locale.ROOT)).toArray(String[]::new);
+        return value -> Arrays.stream(lowered).anyMatch(value::contains);
+    }
+
+    private static BiFunction<PatientDTO, LocalDate, String> source(FormLayout.Field field) {
+        if (field.getSource() == null) {
+            throw new IllegalArgumentException("Field " + field.getId() + " has neither a value nor a source");
+        }
+        return switch (field.getSource()) {
+            case "fullName" -> (patient, renderDate) ->
+                    (patient.getNom() != null ? patient.getNom() : "") + " " +
+                            (patient.getPrenom() != null ? patient.getPrenom() : "");
+            case "nom" -> (patient, renderDate) -> patient.getNom();
+            case "prenom" -> (patient, renderDate) -> patient.getPrenom();
+            case "inp" -> (patient, renderDate) -> patient.getInp();
+            case "cin" -> (patient, renderDate) -> patient.getCin();
+            case "adresse" -> (patient, renderDate) -> patient.getAdresse();
+            case "sexe" -> (patient, renderDate) -> patient.getSexe();
+            case "typedesoin" -> (patient, renderDate) -> patient.getTypedesoin();
+            case "dateNaissance" -> (patient, renderDate) -> patient.getDateNaissance() != null ?
+                    patient.getDateNaissance().format(DATE_FORMATTER) : "";
+            case "renderDate" -> (patient, renderDate) -> renderDate.format(DATE_FORMATTER);
+            default -> throw new IllegalArgumentException(
+                    "Unknown source '" + field.getSource() + "' for field " + field.getId());
+        };
+    }
+
+    private record FieldOp(float x, float y, BiFunction<PatientDTO, LocalDate, String> resolver) {
+    }
+}
@@ -1,5 +1,9 @@
 package com.topaz.back.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.io.Encoders;
@@ -11,10 +15,16 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Service
@@ -24,11 +34,21 @@ public class JwtService {
     
     // Use a fixed, strong secret key for consistency
     private static final String DEFAULT_SECRET = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+
+    // Issue time in milliseconds; the standard iat claim only keeps whole seconds
+    private static final String ISSUED_AT_MILLIS_CLAIM = "iat_ms";
     
     @Value("${jwt.secret:" + DEFAULT_SECRET + "}")
     private String secretKey;
+
+    @Value("${jwt.cache.max-size:10000}")
+    private long verifiedCacheSize;
     
     private Key key;
+    // Immutable and thread-safe, built once for the key
+    private JwtParser parser;
+    // SHA-256 of the token -> its verified claims, each entry expiring with its token
+    private Cache<String, Claims> verifiedTokens;
     
     @PostConstruct
     public void init() {
@@ -45,6 +65,32 @@ public class JwtService {
             key = Keys.hmacShaKeyFor(keyBytes);
             LOGGER.info("JWT key initialized with default key");
         }
+        parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
+        verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String tokenHash, Claims claims, long currentTime) {
+                        long remainingMillis = claims.getExpiration().getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String tokenHash, Claims claims, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String tokenHash, Claims claims, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
     }
 
     public String generateToken(UserDetails userDetails) {
@@ -58,7 +104,9 @@ public class JwtService {
             String token = Jwts.builder()
                     .setClaims(extraClaims)
                     .setSubject(userDetails.getUsername())
+                    .setId(UUID.randomUUID().toString()) // jti, so the token can be revoked
                     .setIssuedAt(new Date(now))
+                    .claim(ISSUED_AT_MILLIS_CLAIM, now)
                     .setExpiration(new Date(now + 1000 * 60 * 60 * 24)) // 24 hours
                     .signWith(key, SignatureAlgorithm.HS256)
                     .compact();
@@ -76,17 +124,35 @@ public class JwtService {
     }
 
     public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
+        final Claims claims = parseAndVerify(token);
         return claimsResolver.apply(claims);
     }
 
+    /**
+     * Verify the token signature and expiration and return its claims. A token is only parsed and
+     * verified the first time it is seen; until it expires, later calls are served from memory.
+     *
+     * @throws ExpiredJwtException when the token has expired
+     * @throws JwtException        when the token is malformed or its signature is invalid
+     */
+    public Claims parseAndVerify(String token) {
+        String tokenHash = sha256(token);
+        Claims cached = verifiedTokens.getIfPresent(tokenHash);
+        // Expired entries may linger until the cache cleans up, never trust them
+        if (cached != null && !isExpired(cached)) {
+            return cached;
+        }
+        Claims claims = extractAllClaims(token);
+        // Tokens without an expiration never reach the cache
+        if (claims.getExpiration() != null) {
+            verifiedTokens.put(tokenHash, claims);
+        }
+        return claims;
+    }
+
     private Claims extractAllClaims(String token) {
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
+            return parser.parseClaimsJws(token).getBody();
         } catch (ExpiredJwtException e) {
             LOGGER.warn("Token expired: {}", e.getMessage());
             throw e;
@@ -98,19 +164,53 @@ public class JwtService {
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
         try {
-            final String username = extractUsername(token);
-            return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
+            return isTokenValid(parseAndVerify(token), userDetails);
         } catch (Exception e) {
             LOGGER.error("Error validating token: {}", e.getMessage());
             return false;
         }
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    /**
+     * Whether already verified claims belong to this user and are still valid
+     */
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        return claims.getSubject() != null
+                && claims.getSubject().equals(userDetails.getUsername())
+                && !isExpired(claims);
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    /**
+     * When the token was issued, in epoch milliseconds. Tokens without the millisecond claim
+     * report the start of their issue second.
+     */
+    public Long getIssuedAtMillis(Claims claims) {
+        Object millis = claims.get(ISSUED_AT_MILLIS_CLAIM);
+        if (millis instanceof Number number) {
+            return number.longValue();
+        }
+        Date issuedAt = claims.getIssuedAt();
+        return issuedAt != null ? issuedAt.getTime() : null;
+    }
+
+    public CacheStats getVerifiedTokenStats() {
+        return verifiedTokens.stats();
+    }
+
+    public long getVerifiedTokenCount() {
+        return verifiedTokens.estimatedSize();
+    }
+
+    private static boolean isExpired(Claims claims) {
+        return claims.getExpiration() != null && claims.getExpiration().before(new Date());
+    }
+
+    private static String sha256(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
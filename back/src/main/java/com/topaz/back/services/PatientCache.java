@@ -0,0 +1,118 @@
+package com.topaz.back.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.topaz.back.dtos.PatientDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of patients by id, with a second cache resolving a CIN to its patient id. Entries
+ * expire after a fixed time and are dropped by the write paths of {@link PatientService}, so a
+ * patient shown, printed and printed again in debug mode is read from the database once.
+ * <p>
+ * Callers always get their own copy of the cached patient. A CIN mapping is checked against the
+ * patient it resolves to, so a CIN that moved to another patient is never served from a stale entry.
+ */
+@Service
+public class PatientCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PatientCache.class);
+
+    private final boolean enabled;
+    private final Cache<Integer, PatientDTO> byId;
+    private final Cache<String, Integer> idByCin;
+
+    public PatientCache(@Value("${patients.cache.enabled:true}") boolean enabled,
+                        @Value("${patients.cache.max-size:10000}") long maxSize,
+                        @Value("${patients.cache.ttl-minutes:10}") long ttlMinutes) {
+        this.enabled = enabled;
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        this.idByCin = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        LOGGER.info("Patient cache {} (max {} patients, {} min TTL)", enabled ? "enabled" : "disabled",
+                maxSize, ttlMinutes);
+    }
+
+    /**
+     * Returns the cached patient, or loads and caches it. Missing patients are not cached.
+     */
+    public Optional<PatientDTO> getById(Integer id, Function<Integer, Optional<PatientDTO>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        // Loading under the cache lock means an eviction issued meanwhile waits and then drops the
+        // loaded value, instead of the loader putting back a patient read before the write
+        PatientDTO patient = byId.get(id, key -> loader.apply(key).orElse(null));
+        return Optional.ofNullable(patient).map(PatientDTO::copy);
+    }
+
+    /**
+     * Resolves the CIN to a patient id with {@code idLoader}, then reads the patient through the
+     * id cache with {@code loader}
+     */
+    public Optional<PatientDTO> getByCin(String cin, Function<String, Optional<Integer>> idLoader,
+                                         Function<Integer, Optional<PatientDTO>> loader) {
+        if (!enabled) {
+            return idLoader.apply(cin).flatMap(loader);
+        }
+        Integer id = idByCin.get(cin, key -> idLoader.apply(key).orElse(null));
+        if (id == null) {
+            return Optional.empty();
+        }
+        Optional<PatientDTO> patient = getById(id, loader);
+        if (patient.isPresent() && cin.equals(patient.get().getCin())) {
+            return patient;
+        }
+        // The CIN was changed or the patient deleted since the mapping was cached
+        idByCin.invalidate(cin);
+        id = idByCin.get(cin, key -> idLoader.apply(key).orElse(null));
+        return id != null ? getById(id, loader) : Optional.empty();
+    }
+
+    /**
+     * Drop a patient after it was updated or deleted
+     */
+    public void evict(Integer id) {
+        PatientDTO previous = byId.asMap().remove(id);
+        if (previous != null && previous.getCin() != null) {
+            idByCin.invalidate(previous.getCin());
+        }
+        LOGGER.debug("Evicted cached patient id: {}", id);
+    }
+
+    public void evictAll() {
+        byId.invalidateAll();
+        idByCin.invalidateAll();
+    }
+
+    public CacheStats getByIdStats() {
+        return byId.stats();
+    }
+
+    public long getByIdSize() {
+        return byId.estimatedSize();
+    }
+
+    public CacheStats getByCinStats() {
+        return idByCin.stats();
+    }
+
+    public long getByCinSize() {
+        return idByCin.estimatedSize();
+    }
+}
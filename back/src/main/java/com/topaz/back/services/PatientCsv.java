@@ -0,0 +1,171 @@
+package com.topaz.back.services;
+
+import com.topaz.back.dtos.PatientDTO;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CSV layout of patient rows (RFC 4180: comma separated, fields quoted when needed, CRLF line ends).
+ * The export writes it and the import reads it back, so both always agree on the columns.
+ */
+public final class PatientCsv {
+
+    public static final List<String> COLUMNS = List.of(
+            "id", "nom", "prenom", "dateNaissance", "cin", "sexe", "adresse", "typedesoin", "inp");
+
+    private PatientCsv() {
+    }
+
+    public static void writeHeader(Writer writer) throws IOException {
+        writeRecord(writer, COLUMNS);
+    }
+
+    public static void writeRow(Writer writer, PatientDTO patient) throws IOException {
+        writeRecord(writer, List.of(
+                patient.getId() != null ? patient.getId().toString() : "",
+                nullToEmpty(patient.getNom()),
+                nullToEmpty(patient.getPrenom()),
+                patient.getDateNaissance() != null ? patient.getDateNaissance().toString() : "",
+                nullToEmpty(patient.getCin()),
+                nullToEmpty(patient.getSexe()),
+                nullToEmpty(patient.getAdresse()),
+                nullToEmpty(patient.getTypedesoin()),
+                nullToEmpty(patient.getInp())));
+    }
+
+    /**
+     * Read one record, following quoted fields across line breaks
+     *
+     * @return the fields, or null at the end of the input
+     * @throws IllegalArgumentException when a quoted field is never closed
+     */
+    public static List<String> readRecord(Reader reader) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Unterminated quoted field");
+                }
+                if (c == '"') {
+                    int next = reader.read();
+                    if (next != '"') {
+                        // Closing quote, the next character is handled as unquoted
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                }
+                field.append((char) c);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                fields.add(field.toString());
+                return fields;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+
+    /**
+     * Column name -> position, from the header record. Columns may come in any order; unknown ones
+     * are ignored.
+     *
+     * @throws IllegalArgumentException when a required column is missing
+     */
+    public static Map<String, Integer> readHeader(List<String> header) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String name = header.get(i).trim();
+            if (COLUMNS.contains(name)) {
+                positions.put(name, i);
+            }
+        }
+        if (!positions.containsKey("nom") || !positions.containsKey("prenom")) {
+            throw new IllegalArgumentException("CSV header must contain at least the nom and prenom columns");
+        }
+        return positions;
+    }
+
+    /**
+     * Map a record to a patient using the header positions. The id column, if any, is ignored.
+     *
+     * @throws IllegalArgumentException when the record does not match the header or a date is invalid
+     */
+    public static PatientDTO toPatient(Map<String, Integer> header, List<String> record) {
+        int expected = header.values().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+        if (record.size() < expected) {
+            throw new IllegalArgumentException("Expected " + expected + " column(s) but found " + record.size());
+        }
+        PatientDTO patient = new PatientDTO();
+        patient.setNom(value(header, record, "nom"));
+        patient.setPrenom(value(header, record, "prenom"));
+        patient.setCin(value(header, record, "cin"));
+        patient.setSexe(value(header, record, "sexe"));
+        patient.setAdresse(value(header, record, "adresse"));
+        patient.setTypedesoin(value(header, record, "typedesoin"));
+        patient.setInp(value(header, record, "inp"));
+        String dateNaissance = value(header, record, "dateNaissance");
+        if (dateNaissance != null) {
+            try {
+                patient.setDateNaissance(LocalDate.parse(dateNaissance));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid dateNaissance '" + dateNaissance + "', expected yyyy-MM-dd");
+            }
+        }
+        return patient;
+    }
+
+    private static String value(Map<String, Integer> header, List<String> record, String column) {
+        Integer position = header.get(column);
+        if (position == null) {
+            return null;
+        }
+        String value = record.get(position).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static void writeRecord(Writer writer, List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeField(writer, values.get(i));
+        }
+        writer.write("\r\n");
+    }
+
+    private static void writeField(Writer writer, String value) throws IOException {
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,92 @@
+package com.topaz.back.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the whole patient table as NDJSON or CSV. Rows are streamed from the database and
+ * written as they arrive, so memory use does not depend on the number of patients.
+ */
+@Service
+@RequiredArgsConstructor
+public class PatientExportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PatientExportService.class);
+
+    // Push rows to the client regularly rather than only when the buffers fill up
+    private static final int FLUSH_EVERY = 500;
+
+    private final PatientService patientService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * One JSON object per line. The stream is flushed but left open.
+     */
+    public void writeNdjson(OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        // Spring Boot's mapper flushes after every value; only the periodic flush below should apply
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        AtomicInteger count = new AtomicInteger();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Values are separated by the newline written after each one, not by Jackson's default space
+            generator.setRootValueSeparator(null);
+            patientService.forEachPatient(0, patient -> {
+                try {
+                    writer.writeValue(generator, patient);
+                    generator.writeRaw('\n');
+                    if (count.incrementAndGet() % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+        LOGGER.info("Exported {} patient(s) as NDJSON in {} ms", count.get(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * CSV with a header row, see {@link PatientCsv}. The stream is flushed but left open.
+     */
+    public void writeCsv(OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        AtomicInteger count = new AtomicInteger();
+        PatientCsv.writeHeader(writer);
+        try {
+            patientService.forEachPatient(0, patient -> {
+                try {
+                    PatientCsv.writeRow(writer, patient);
+                    if (count.incrementAndGet() % FLUSH_EVERY == 0) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        LOGGER.info("Exported {} patient(s) as CSV in {} ms", count.get(), System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,268 @@
+package com.topaz.back.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.topaz.back.dtos.PatientDTO;
+import com.topaz.back.dtos.PatientImportResultDTO;
+import com.topaz.back.entities.Patient;
+import com.topaz.back.repositories.PatientRepository;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Imports patients from CSV or NDJSON. Rows are validated with the same rules as single creates
+ * and inserted in chunks, each chunk in one transaction and, with JDBC batching enabled, in a few
+ * batched statements. When a chunk fails (e.g. a duplicate CIN) it is retried row by row so that
+ * only the offending rows are rejected and reported. Duplicate CINs, within the file or with existing
+ * patients, are rejected up front; the CIN filter spares a database check for nearly every new CIN.
+ */
+@Service
+public class PatientImportService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PatientImportService.class);
+
+    // Keeps the report small even when a whole file is rejected
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final PatientService patientService;
+    private final PatientSearchIndex patientSearchIndex;
+    private final CinFilter cinFilter;
+    private final PatientRepository patientRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public PatientImportService(PatientService patientService,
+                                PatientSearchIndex patientSearchIndex,
+                                CinFilter cinFilter,
+                                PatientRepository patientRepository,
+                                EntityManager entityManager,
+                                ObjectMapper objectMapper,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${patients.import.chunk-size:500}") int chunkSize) {
+        this.patientService = patientService;
+        this.patientSearchIndex = patientSearchIndex;
+        this.cinFilter = cinFilter;
+        this.patientRepository = patientRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Import a CSV file whose first record is a header naming the columns, see {@link PatientCsv}
+     *
+     * @throws IllegalArgumentException when the header is missing or invalid
+     */
+    public PatientImportResultDTO importCsv(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> header = PatientCsv.readRecord(reader);
+        if (header == null) {
+            throw new IllegalArgumentException("CSV file is empty");
+        }
+        // Spreadsheet tools often start UTF-8 CSV files with a byte order mark
+        if (!header.isEmpty() && header.get(0).startsWith("\uFEFF")) {
+            header.set(0, header.get(0).substring(1));
+        }
+        Map<String, Integer> columns = PatientCsv.readHeader(header);
+
+        return importRows(() -> {
+            List<String> record = PatientCsv.readRecord(reader);
+            while (record != null && record.size() == 1 && record.get(0).isBlank()) {
+                record = PatientCsv.readRecord(reader);
+            }
+            if (record == null) {
+                return null;
+            }
+            List<String> fields = record;
+            return () -> PatientCsv.toPatient(columns, fields);
+        });
+    }
+
+    /**
+     * Import one JSON patient object per line. Blank lines are skipped.
+     */
+    public PatientImportResultDTO importNdjson(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return importRows(() -> {
+            String line = reader.readLine();
+            while (line != null && line.isBlank()) {
+                line = reader.readLine();
+            }
+            if (line == null) {
+                return null;
+            }
+            String json = line;
+            return () -> {
+                try {
+                    return objectMapper.readValue(json, PatientDTO.class);
+                } catch (JsonProcessingException e) {
+                    throw new IllegalArgumentException("Invalid JSON: " + e.getOriginalMessage());
+                }
+            };
+        });
+    }
+
+    private PatientImportResultDTO importRows(RowSource source) throws IOException {
+        long start = System.currentTimeMillis();
+        ImportReport report = new ImportReport();
+        List<PendingRow> chunk = new ArrayList<>(chunkSize);
+        // Upper-cased like the case-insensitive unique index on the column
+        Set<String> fileCins = new HashSet<>();
+
+        while (true) {
+            RowParser parser;
+            try {
+                parser = source.next();
+            } catch (IllegalArgumentException e) {
+                // Nothing can be read past a malformed record; rows already inserted stay and are reported
+                report.error(++report.total, e.getMessage() + ", the rest of the file was not read");
+                break;
+            }
+            if (parser == null) {
+                break;
+            }
+            int row = ++report.total;
+            try {
+                PatientDTO patient = parser.parse();
+                patientService.validatePatientDTO(patient);
+                // Imports always create new patients
+                patient.setId(null);
+                checkCin(patient.getCin(), fileCins);
+                chunk.add(new PendingRow(row, patient));
+            } catch (IllegalArgumentException e) {
+                report.error(row, e.getMessage());
+            }
+            if (chunk.size() >= chunkSize) {
+                insertChunk(chunk, report);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            insertChunk(chunk, report);
+        }
+
+        LOGGER.info("Imported {} of {} patient row(s) in {} ms ({} failed)",
+                report.imported, report.total, System.currentTimeMillis() - start, report.failed);
+        // Rows rejected on insert are reported after the ones rejected on validation
+        report.errors.sort(Comparator.comparingInt(PatientImportResultDTO.RowError::getRow));
+        return PatientImportResultDTO.builder()
+                .total(report.total)
+                .imported(report.imported)
+                .failed(report.failed)
+                .errors(report.errors)
+                .errorsTruncated(report.failed > report.errors.size())
+                .build();
+    }
+
+    private void checkCin(String cin, Set<String> fileCins) {
+        if (cin == null || cin.isBlank()) {
+            return;
+        }
+        if (!fileCins.add(cin.toUpperCase(Locale.ROOT))) {
+            throw new IllegalArgumentException("Duplicate CIN " + cin + " in the file");
+        }
+        if (patientService.cinExists(cin)) {
+            throw new IllegalArgumentException("A patient with CIN " + cin + " already exists");
+        }
+    }
+
+    private void insertChunk(List<PendingRow> chunk, ImportReport report) {
+        List<Patient> patients = new ArrayList<>(chunk.size());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (PendingRow pending : chunk) {
+                    patients.add(patientService.convertToEntity(pending.patient()));
+                }
+                patientRepository.saveAll(patients);
+                entityManager.flush();
+                // Nothing imported is read back, keep the persistence context empty
+                entityManager.clear();
+            });
+            report.imported += chunk.size();
+            patients.forEach(this::indexImported);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Import chunk of {} row(s) failed, retrying row by row: {}",
+                    chunk.size(), NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+            for (PendingRow pending : chunk) {
+                insertRow(pending, report);
+            }
+        }
+    }
+
+    private void insertRow(PendingRow pending, ImportReport report) {
+        try {
+            Patient patient = transactionTemplate.execute(status -> {
+                Patient saved = patientRepository.save(patientService.convertToEntity(pending.patient()));
+                entityManager.flush();
+                entityManager.clear();
+                return saved;
+            });
+            report.imported++;
+            indexImported(patient);
+        } catch (RuntimeException e) {
+            // Database messages may go on with the failing SQL statement, keep the first line only
+            String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            report.error(pending.row(), message != null ? message.lines().findFirst().orElse(message) : "Insert failed");
+        }
+    }
+
+    private void indexImported(Patient patient) {
+        cinFilter.put(patient.getCin());
+        patientSearchIndex.put(patientService.convertToDTO(patient));
+    }
+
+    @FunctionalInterface
+    private interface RowSource {
+        /**
+         * The next row, parsed lazily so that a malformed row is reported rather than failing the import
+         *
+         * @return null at the end of the input
+         * @throws IllegalArgumentException when the input is malformed and cannot be read any further
+         */
+        RowParser next() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface RowParser {
+        PatientDTO parse();
+    }
+
+    private record PendingRow(int row, PatientDTO patient) {
+    }
+
+    private static final class ImportReport {
+        private final List<PatientImportResultDTO.RowError> errors = new ArrayList<>();
+        private int total;
+        private int imported;
+        private int failed;
+
+        private void error(int row, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new PatientImportResultDTO.RowError(row, message));
+            }
+        }
+    }
+}
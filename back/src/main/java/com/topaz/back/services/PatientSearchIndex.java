@@ -0,0 +1,419 @@
+package com.topaz.back.services;
+
+import com.topaz.back.dtos.PatientDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory search over patient names and CIN. Values are accent-folded and split into words. Each
+ * distinct word maps to the patients having it, and is itself indexed by its trigrams (a leading "$"
+ * marks the start of the word). A query word is first matched against the distinct words, ranked as
+ * exact word, prefix, within a few typos (Damerau-Levenshtein distance), or substring; only then are
+ * the patients of the matching words collected and the best ones kept.
+ * <p>
+ * Lookups never touch the database. The index is filled at startup and kept up to date by the
+ * patient write paths; reads are lock-free and writes are serialized. The startup load runs while
+ * requests are already served, so it never replaces an entry written meanwhile at the same or a newer
+ * version, nor brings back a patient removed meanwhile.
+ */
+@Service
+public class PatientSearchIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PatientSearchIndex.class);
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    private static final int EXACT = 100;
+    private static final int PREFIX = 80;
+    private static final int FUZZY = 60;
+    private static final int FUZZY_PREFIX = 40;
+    private static final int SUBSTRING = 30;
+
+    // Best first: score, then patients with fewer words (closer matches), then oldest record.
+    // Packed into one long so that ranking a candidate is a single comparison.
+    private static final Comparator<Scored> RANKING = Comparator.comparingLong(Scored::rank).reversed();
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    // Distinct word -> patients having it
+    private final Map<String, Set<Integer>> tokenPatients = new ConcurrentHashMap<>();
+    // Trigram -> distinct words containing it
+    private final Map<String, Set<String>> gramTokens = new ConcurrentHashMap<>();
+    // Ids removed before the initial load completed, which its older rows must not bring back
+    private final Set<Integer> removedWhileLoading = new HashSet<>();
+    private volatile boolean ready;
+
+    /**
+     * Add a patient, or replace its previous version
+     */
+    public synchronized void put(PatientDTO patient) {
+        Entry previous = entries.get(patient.getId());
+        if (previous != null) {
+            unindex(previous);
+        }
+        Entry entry = new Entry(patient.copy(), tokens(patient.getNom(), patient.getPrenom(), patient.getCin()));
+        entries.put(patient.getId(), entry);
+        for (String token : entry.tokens()) {
+            Set<Integer> ids = tokenPatients.computeIfAbsent(token, key -> {
+                for (String gram : grams(key, true)) {
+                    gramTokens.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(key);
+                }
+                return ConcurrentHashMap.newKeySet();
+            });
+            ids.add(patient.getId());
+        }
+    }
+
+    /**
+     * Add a patient read by the initial load, unless the write paths already indexed it at the
+     * same or a newer version, or removed it, since the load started
+     *
+     * @return whether the patient was added
+     */
+    public synchronized boolean load(PatientDTO patient) {
+        if (removedWhileLoading.contains(patient.getId())) {
+            return false;
+        }
+        Entry current = entries.get(patient.getId());
+        if (current != null && !isNewer(patient.getVersion(), current.patient().getVersion())) {
+            return false;
+        }
+        put(patient);
+        return true;
+    }
+
+    private static boolean isNewer(Long version, Long than) {
+        return version != null && (than == null || version > than);
+    }
+
+    /**
+     * A copy of the indexed version of the patient
+     */
+    public Optional<PatientDTO> get(Integer id) {
+        Entry entry = entries.get(id);
+        return entry != null ? Optional.of(entry.patient().copy()) : Optional.empty();
+    }
+
+    public synchronized void remove(Integer id) {
+        if (!ready) {
+            removedWhileLoading.add(id);
+        }
+        Entry previous = entries.remove(id);
+        if (previous != null) {
+            unindex(previous);
+        }
+    }
+
+    /**
+     * Mark the initial load as done. Until then results may be incomplete.
+     */
+    public synchronized void markReady() {
+        ready = true;
+        removedWhileLoading.clear();
+        LOGGER.info("Patient search index ready with {} patient(s) and {} distinct word(s)",
+                entries.size(), tokenPatients.size());
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The best {@code limit} patients matching every word of the query, best match first
+     */
+    public List<PatientDTO> search(String query, int limit) {
+        String[] queryTokens = Arrays.stream(tokens(query))
+                .filter(token -> token.length() >= MIN_TOKEN_LENGTH)
+                .toArray(String[]::new);
+        if (queryTokens.length == 0 || limit < 1) {
+            return List.of();
+        }
+
+        // Indexed words matching each query word, with their score
+        List<Map<String, Integer>> matches = new ArrayList<>(queryTokens.length);
+        int driver = 0;
+        long driverPatients = Long.MAX_VALUE;
+        for (String queryToken : queryTokens) {
+            Map<String, Integer> matching = matchTokens(queryToken);
+            if (matching.isEmpty()) {
+                return List.of();
+            }
+            // Patients are collected from the most selective query word and checked against the others
+            long patients = matching.keySet().stream().mapToLong(token -> sizeOf(tokenPatients.get(token))).sum();
+            if (patients < driverPatients) {
+                driverPatients = patients;
+                driver = matches.size();
+            }
+            matches.add(matching);
+        }
+
+        // Max-heap on the ranking, the weakest result kept on top
+        PriorityQueue<Scored> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        Map<String, Integer> driverMatches = matches.get(driver);
+        for (String token : driverMatches.keySet()) {
+            Set<Integer> ids = tokenPatients.get(token);
+            if (ids == null) {
+                continue;
+            }
+            for (Integer id : ids) {
+                Entry entry = entries.get(id);
+                // A patient with several matching words is reached once per word, only count the first
+                if (entry == null || !token.equals(firstMatching(driverMatches, entry.tokens()))) {
+                    continue;
+                }
+                int total = 0;
+                for (int i = 0; i < matches.size(); i++) {
+                    int score = bestScore(matches.get(i), entry.tokens());
+                    if (score == 0) {
+                        total = 0;
+                        break;
+                    }
+                    total += score;
+                }
+                if (total == 0) {
+                    continue;
+                }
+                long rank = rank(total, entry.tokens().length, id);
+                if (best.size() < limit) {
+                    best.add(new Scored(entry, rank));
+                } else if (rank > best.peek().rank()) {
+                    best.poll();
+                    best.add(new Scored(entry, rank));
+                }
+            }
+        }
+
+        List<PatientDTO> results = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            results.add(best.poll().entry().patient().copy());
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    private static long rank(int score, int tokenCount, int id) {
+        return ((long) score << 40) | ((long) (0xFF - Math.min(tokenCount, 0xFF)) << 32) | (Integer.MAX_VALUE - id);
+    }
+
+    private static String firstMatching(Map<String, Integer> matching, String[] tokens) {
+        for (String token : tokens) {
+            if (matching.containsKey(token)) {
+                return token;
+            }
+        }
+        return null;
+    }
+
+    private static int bestScore(Map<String, Integer> matching, String[] tokens) {
+        int best = 0;
+        for (String token : tokens) {
+            best = Math.max(best, matching.getOrDefault(token, 0));
+        }
+        return best;
+    }
+
+    /**
+     * Indexed words matching the query word. A candidate must share enough trigrams with the query;
+     * it is found by walking the smallest trigram lists only and checking the others by lookup.
+     */
+    private Map<String, Integer> matchTokens(String queryToken) {
+        List<String> grams = grams(queryToken, false);
+        int maxEdits = maxEdits(queryToken);
+        if (maxEdits == 0 && grams.size() > 1) {
+            // Exact, prefix and substring matches all contain every trigram but the leading one
+            grams = grams.subList(1, grams.size());
+        }
+        List<Set<String>> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            Set<String> tokens = gramTokens.get(gram);
+            lists.add(tokens != null ? tokens : Set.of());
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        // Each edit changes at most three trigrams; a substring match misses the leading one
+        int required = maxEdits == 0
+                ? lists.size()
+                : Math.max(1, lists.size() - 3 * maxEdits - 1);
+        // A word present in at least `required` lists is present in one of the smallest
+        // (lists - required + 1) ones
+        int scanned = lists.size() - required + 1;
+
+        Map<String, Integer> matching = new HashMap<>();
+        for (int i = 0; i < scanned; i++) {
+            for (String token : lists.get(i)) {
+                if (matching.containsKey(token)) {
+                    continue;
+                }
+                int shared = 0;
+                for (Set<String> list : lists) {
+                    if (list.contains(token)) {
+                        shared++;
+                    }
+                }
+                int score = shared >= required ? score(queryToken, token) : 0;
+                // Remember rejected words too, so they are not checked twice
+                matching.put(token, score);
+            }
+        }
+        matching.values().removeIf(score -> score == 0);
+        return matching;
+    }
+
+    private static int score(String query, String token) {
+        if (token.equals(query)) {
+            return EXACT;
+        }
+        if (token.startsWith(query)) {
+            return PREFIX;
+        }
+        int maxEdits = maxEdits(query);
+        if (maxEdits > 0) {
+            int distance = editDistance(query, token, maxEdits);
+            if (distance <= maxEdits) {
+                return FUZZY - 10 * distance;
+            }
+            if (token.length() > query.length()) {
+                distance = editDistance(query, token.substring(0, query.length()), maxEdits);
+                if (distance <= maxEdits) {
+                    return FUZZY_PREFIX - 10 * distance;
+                }
+            }
+        }
+        if (query.length() >= 3 && token.contains(query)) {
+            return SUBSTRING;
+        }
+        return 0;
+    }
+
+    private static int maxEdits(String token) {
+        if (token.length() < 5) {
+            return 0;
+        }
+        return token.length() <= 8 ? 1 : 2;
+    }
+
+    /**
+     * Edit distance counting insertions, deletions, substitutions and swaps of adjacent letters
+     * (optimal string alignment), or {@code max + 1} as soon as it is known to exceed {@code max}
+     */
+    static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] beforePrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, beforePrevious[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+
+    private void unindex(Entry entry) {
+        Integer id = entry.patient().getId();
+        for (String token : entry.tokens()) {
+            tokenPatients.computeIfPresent(token, (key, ids) -> {
+                ids.remove(id);
+                if (!ids.isEmpty()) {
+                    return ids;
+                }
+                // Last patient with this word, drop the word from the trigram lists
+                for (String gram : grams(key, true)) {
+                    gramTokens.computeIfPresent(gram, (g, tokens) -> {
+                        tokens.remove(key);
+                        return tokens.isEmpty() ? null : tokens;
+                    });
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Trigrams of "$" + token, plus the one ending with "^" for indexed words. Queries leave the
+     * end open so that a partial word matches as a prefix.
+     */
+    private static List<String> grams(String token, boolean indexed) {
+        String padded = "$" + token + (indexed ? "^" : "");
+        List<String> grams = new ArrayList<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        if (grams.isEmpty()) {
+            grams.add(padded);
+        }
+        return grams;
+    }
+
+    /**
+     * Lower-cased, accent-free words of the given values
+     */
+    static String[] tokens(String... values) {
+        List<String> tokens = new ArrayList<>();
+        for (String value : values) {
+            if (value == null) {
+                continue;
+            }
+            String folded = MARKS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("")
+                    .toLowerCase(Locale.ROOT);
+            for (String token : SEPARATORS.split(folded)) {
+                if (!token.isEmpty() && !tokens.contains(token)) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens.toArray(String[]::new);
+    }
+
+    private static int sizeOf(Set<?> set) {
+        return set != null ? set.size() : 0;
+    }
+
+    private record Entry(PatientDTO patient, String[] tokens) {
+    }
+
+    private record Scored(Entry entry, long rank) {
+    }
+}
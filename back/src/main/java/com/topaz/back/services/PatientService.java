@@ -1,22 +1,53 @@
 package com.topaz.back.services;
 
 import com.topaz.back.dtos.PatientDTO;
+import com.topaz.back.dtos.PatientFilter;
+import com.topaz.back.dtos.PatientPageDTO;
 import com.topaz.back.entities.Patient;
 import com.topaz.back.repositories.PatientRepository;
+import com.topaz.back.repositories.PatientSpecifications;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -24,8 +55,18 @@ public class PatientService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PatientService.class);
 
+    public static final String SORT_BY_ID = "id";
+    public static final String SORT_BY_NAME = "name";
+    private static final String CURSOR_SEPARATOR = "\u0000";
+
     private final PatientRepository patientRepository;
     private final PdfService pdfService;
+    private final PdfRenderCache pdfRenderCache;
+    private final EntityManager entityManager;
+    private final PatientSearchIndex patientSearchIndex;
+    private final PatientCache patientCache;
+    private final CinFilter cinFilter;
+    private final TransactionTemplate transactionTemplate;
 
     public List<PatientDTO> getAllPatients() {
         LOGGER.info("Fetching all patients");
@@ -37,45 +78,373 @@ public class PatientService {
 
     public Optional<PatientDTO> getPatientById(Integer id) {
         LOGGER.info("Fetching patient with id: {}", id);
-        return patientRepository.findById(id)
-                .map(this::convertToDTO);
+        return patientCache.getById(id, this::loadPatient);
+    }
+
+    public Optional<PatientDTO> getPatientByCin(String cin) {
+        LOGGER.info("Fetching patient with CIN: {}", cin);
+        return patientCache.getByCin(cin, patientRepository::findIdByCin, this::loadPatient);
+    }
+
+    private Optional<PatientDTO> loadPatient(Integer id) {
+        return patientRepository.findById(id).map(this::convertToDTO);
+    }
+
+    /**
+     * Load several patients in one query. Results follow the order of the requested ids;
+     * ids that do not exist are skipped.
+     */
+    public List<PatientDTO> getPatientsByIds(List<Integer> ids) {
+        LOGGER.info("Fetching {} patient(s) by id", ids.size());
+        Map<Integer, Patient> patients = patientRepository.findAllById(new LinkedHashSet<>(ids))
+                .stream()
+                .collect(Collectors.toMap(Patient::getId, Function.identity()));
+        return ids.stream()
+                .map(patients::get)
+                .filter(Objects::nonNull)
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * One page of patients, ordered by id or by name, after the row encoded in {@code cursor}.
+     * Filters, ordering and the page limit are all applied by the database, and the cursor turns
+     * into a range condition on an index, so a page costs the same however deep it is.
+     *
+     * @throws IllegalArgumentException when the sort or the cursor is invalid
+     */
+    public PatientPageDTO getPatientPage(PatientFilter filter, String sort, String cursor, int size) {
+        LOGGER.info("Fetching page of {} patient(s) sorted by {}", size, sort);
+        boolean byName = SORT_BY_NAME.equals(sort);
+        if (!byName && !SORT_BY_ID.equals(sort)) {
+            throw new IllegalArgumentException("Unknown sort: " + sort);
+        }
+
+        Specification<Patient> spec = filterSpecification(filter);
+        if (cursor != null && !cursor.isBlank()) {
+            spec = spec.and(cursorSpecification(cursor, byName));
+        }
+        Sort order = byName ? Sort.by("nom", "prenom", "id") : Sort.by("id");
+
+        // One extra row tells whether there is a next page without counting the table
+        List<Patient> rows = patientRepository.findBy(spec, query -> query.sortBy(order).limit(size + 1).all());
+        boolean hasMore = rows.size() > size;
+        List<Patient> page = hasMore ? rows.subList(0, size) : rows;
+
+        return PatientPageDTO.builder()
+                .items(page.stream().map(this::convertToDTO).collect(Collectors.toList()))
+                .size(page.size())
+                .nextCursor(hasMore ? encodeCursor(page.get(page.size() - 1), byName) : null)
+                .build();
+    }
+
+    private Specification<Patient> filterSpecification(PatientFilter filter) {
+        if (filter == null) {
+            return Specification.where(null);
+        }
+        String typedesoin = blankToNull(filter.getTypedesoin());
+        return PatientSpecifications.matches(
+                typedesoin != null ? typedesoin.toLowerCase() : null,
+                blankToNull(filter.getSexe()),
+                localDateToDate(filter.getBornFrom()),
+                localDateToDate(filter.getBornTo()));
+    }
+
+    private String encodeCursor(Patient last, boolean byName) {
+        String value = byName
+                ? String.join(CURSOR_SEPARATOR, SORT_BY_NAME, last.getNom(), last.getPrenom(), String.valueOf(last.getId()))
+                : String.join(CURSOR_SEPARATOR, SORT_BY_ID, String.valueOf(last.getId()));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Specification<Patient> cursorSpecification(String cursor, boolean byName) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(CURSOR_SEPARATOR, -1);
+            if (byName && parts.length == 4 && SORT_BY_NAME.equals(parts[0])) {
+                return PatientSpecifications.nameAfter(parts[1], parts[2], Integer.valueOf(parts[3]));
+            }
+            if (!byName && parts.length == 2 && SORT_BY_ID.equals(parts[0])) {
+                return PatientSpecifications.idAfter(Integer.valueOf(parts[1]));
+            }
+        } catch (IllegalArgumentException e) {
+            // Not base64 or not a number, reported below
+        }
+        LOGGER.error("Invalid patient page cursor: {}", cursor);
+        throw new IllegalArgumentException("Invalid cursor");
+    }
+
+    private String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * Visit every patient with an id greater than {@code afterId}, in id order, without loading
+     * them all at once. Rows are streamed from the database and each entity is detached as soon as
+     * it is converted, so memory use does not grow with the number of patients.
+     */
+    @Transactional(readOnly = true)
+    public void forEachPatient(Integer afterId, Consumer<PatientDTO> action) {
+        try (Stream<Patient> patients = patientRepository.findByIdGreaterThanOrderByIdAsc(
+                afterId != null ? afterId : 0)) {
+            patients.forEach(patient -> {
+                PatientDTO dto = convertToDTO(patient);
+                entityManager.detach(patient);
+                action.accept(dto);
+            });
+        }
     }
 
     public PatientDTO createPatient(PatientDTO dto) {
         LOGGER.info("Creating patient: {} {}", dto.getNom(), dto.getPrenom());
         validatePatientDTO(dto);
+        checkCinAvailable(dto.getCin());
         Patient patient = convertToEntity(dto);
-        return convertToDTO(patientRepository.save(patient));
+        // Always a new row: a client-supplied id would make save() persist a detached entity
+        patient.setId(null);
+        PatientDTO created = convertToDTO(patientRepository.save(patient));
+        cinFilter.put(created.getCin());
+        patientSearchIndex.put(created);
+        return created;
     }
 
     public void deletePatient(Integer id) {
         LOGGER.info("Deleting patient with id: {}", id);
-        if (!patientRepository.existsById(id)) {
+        if (patientRepository.deleteByIds(List.of(id)) == 0) {
             LOGGER.warn("Patient not found with id: {}", id);
             throw new EntityNotFoundException("Patient not found with id: " + id);
         }
-        patientRepository.deleteById(id);
+        afterDelete(List.of(id));
+    }
+
+    /**
+     * Delete every listed patient in one statement. Ids that do not exist are ignored.
+     *
+     * @return the number of patients deleted
+     */
+    public int deletePatients(Collection<Integer> ids) {
+        Set<Integer> distinct = new LinkedHashSet<>(ids);
+        LOGGER.info("Deleting {} patient(s)", distinct.size());
+        int deleted = patientRepository.deleteByIds(distinct);
+        afterDelete(distinct);
+        LOGGER.info("Deleted {} of {} patient(s)", deleted, distinct.size());
+        return deleted;
+    }
+
+    private void afterDelete(Collection<Integer> ids) {
+        ids.forEach(patientCache::evict);
+        pdfRenderCache.evictPatients(ids);
+        ids.forEach(patientSearchIndex::remove);
     }
 
     public PatientDTO updatePatient(Integer id, PatientDTO dto) {
+        return updatePatient(id, dto, null);
+    }
+
+    /**
+     * Replace every field of the patient in a single UPDATE statement. With an
+     * {@code expectedVersion} the update only applies to that version of the row.
+     *
+     * @throws EntityNotFoundException           when the patient does not exist
+     * @throws OptimisticLockingFailureException when the patient is at another version
+     * @throws IllegalArgumentException          when the data is invalid or the CIN already in use
+     */
+    public PatientDTO updatePatient(Integer id, PatientDTO dto, Long expectedVersion) {
         LOGGER.info("Updating patient with id: {}", id);
         validatePatientDTO(dto);
-        Patient patient = patientRepository.findById(id)
-                .orElseThrow(() -> {
-                    LOGGER.warn("Patient not found with id: {}", id);
-                    return new EntityNotFoundException("Patient not found with id: " + id);
-                });
+        Patient values = convertToEntity(dto);
+        Map<String, Object> changes = new LinkedHashMap<>();
+        changes.put("nom", values.getNom());
+        changes.put("prenom", values.getPrenom());
+        changes.put("dateNaissance", values.getDateNaissance());
+        changes.put("cin", values.getCin());
+        changes.put("sexe", values.getSexe());
+        changes.put("adresse", values.getAdresse());
+        changes.put("typedesoin", values.getTypedesoin());
+        changes.put("inp", values.getInp());
 
-        patient.setNom(dto.getNom());
-        patient.setPrenom(dto.getPrenom());
-        patient.setDateNaissance(localDateToDate(dto.getDateNaissance()));
-        patient.setCin(dto.getCin());
-        patient.setSexe(dto.getSexe());
-        patient.setAdresse(dto.getAdresse());
-        patient.setTypedesoin(dto.getTypedesoin() != null ? dto.getTypedesoin().toLowerCase() : null);
-        patient.setInp(dto.getInp());
+        long version = applyUpdate(id, changes, expectedVersion);
+        values.setId(id);
+        values.setVersion(version);
+        PatientDTO updated = convertToDTO(values);
+        afterUpdate(updated);
+        return updated;
+    }
+
+    /**
+     * Change only the given fields, in a single UPDATE statement. Keys are {@link PatientDTO}
+     * property names; a null value clears the field. Dates use the ISO format (yyyy-MM-dd).
+     *
+     * @return the new version of the patient
+     * @throws EntityNotFoundException           when the patient does not exist
+     * @throws OptimisticLockingFailureException when the patient is at another version
+     * @throws IllegalArgumentException          when a field is unknown or invalid, or the CIN already in use
+     */
+    public long patchPatient(Integer id, Map<String, Object> fields, Long expectedVersion) {
+        LOGGER.info("Patching fields {} of patient with id: {}", fields.keySet(), id);
+        Map<String, Object> changes = toChanges(fields);
+
+        long version = applyUpdate(id, changes, expectedVersion);
+        afterPatch(List.of(id), changes, version);
+        return version;
+    }
+
+    /**
+     * Set the same fields on every listed patient in one statement, e.g. to reassign the type de
+     * soin of a group. Fields are given as for {@link #patchPatient}; ids that do not exist are
+     * ignored.
+     *
+     * @return the number of patients updated
+     * @throws IllegalArgumentException when a field is unknown or invalid, or a CIN already in use
+     */
+    public int updatePatients(Collection<Integer> ids, Map<String, Object> fields) {
+        Set<Integer> distinct = new LinkedHashSet<>(ids);
+        LOGGER.info("Setting fields {} on {} patient(s)", fields.keySet(), distinct.size());
+        Map<String, Object> changes = toChanges(fields);
+
+        int updated = executeUpdate(changes, (builder, root) -> root.get("id").in(distinct));
+        // Rows may now be at different versions; the index copies are refreshed without one
+        afterPatch(distinct, changes, null);
+        LOGGER.info("Updated {} of {} patient(s)", updated, distinct.size());
+        return updated;
+    }
+
+    /**
+     * Validate the fields of a partial update and turn them into entity attribute values
+     */
+    private Map<String, Object> toChanges(Map<String, Object> fields) {
+        if (fields == null || fields.isEmpty()) {
+            throw new IllegalArgumentException("No field to update");
+        }
+        Map<String, Object> changes = new LinkedHashMap<>();
+        fields.forEach((field, value) -> {
+            if (value != null && !(value instanceof String)) {
+                throw new IllegalArgumentException("Field " + field + " must be a string or null");
+            }
+            String text = (String) value;
+            switch (field) {
+                case "nom", "prenom" -> {
+                    if (text == null || text.trim().isEmpty()) {
+                        throw new IllegalArgumentException("Patient " + field + " cannot be null or empty");
+                    }
+                    changes.put(field, text);
+                }
+                case "cin", "sexe", "adresse", "inp" -> changes.put(field, text);
+                case "typedesoin" -> changes.put(field, text != null ? text.toLowerCase() : null);
+                case "dateNaissance" -> changes.put(field, localDateToDate(parseDate(text)));
+                default -> throw new IllegalArgumentException("Unknown or read-only field: " + field);
+            }
+        });
+        return changes;
+    }
+
+    private void afterPatch(Collection<Integer> ids, Map<String, Object> changes, Long version) {
+        if (changes.containsKey("cin")) {
+            cinFilter.put((String) changes.get("cin"));
+        }
+        ids.forEach(patientCache::evict);
+        pdfRenderCache.evictPatients(ids);
+        List<Integer> notIndexed = new ArrayList<>();
+        for (Integer id : ids) {
+            patientSearchIndex.get(id).ifPresentOrElse(patched -> {
+                applyChanges(patched, changes);
+                if (version != null) {
+                    patched.setVersion(version);
+                }
+                patientSearchIndex.put(patched);
+            }, () -> notIndexed.add(id));
+        }
+        // Not loaded yet: the startup load may hold a row older than this change, index the current one
+        if (!patientSearchIndex.isReady() && !notIndexed.isEmpty()) {
+            getPatientsByIds(notIndexed).forEach(patientSearchIndex::put);
+        }
+    }
+
+    private void afterUpdate(PatientDTO updated) {
+        cinFilter.put(updated.getCin());
+        patientCache.evict(updated.getId());
+        pdfRenderCache.evictPatient(updated.getId());
+        patientSearchIndex.put(updated);
+    }
+
+    /**
+     * Run one UPDATE of the given entity attributes that also bumps the version, and return the
+     * new version. The row is only read back when the update did not say which version it wrote.
+     */
+    private long applyUpdate(Integer id, Map<String, Object> changes, Long expectedVersion) {
+        return transactionTemplate.execute(status -> {
+            int updated = executeUpdate(changes, (builder, root) -> {
+                Predicate byId = builder.equal(root.get("id"), id);
+                return expectedVersion != null
+                        ? builder.and(byId, builder.equal(root.get("version"), expectedVersion))
+                        : byId;
+            });
+            if (updated == 1) {
+                return expectedVersion != null
+                        ? expectedVersion + 1
+                        : patientRepository.findVersionById(id).orElseThrow();
+            }
+            // Nothing updated: tell a missing patient from a concurrent change
+            Optional<Long> current = patientRepository.findVersionById(id);
+            if (current.isEmpty()) {
+                LOGGER.warn("Patient not found with id: {}", id);
+                throw new EntityNotFoundException("Patient not found with id: " + id);
+            }
+            LOGGER.warn("Patient id {} is at version {}, not {}", id, current.get(), expectedVersion);
+            throw new OptimisticLockingFailureException("Patient " + id + " was modified concurrently");
+        });
+    }
+
+    /**
+     * One UPDATE setting the given entity attributes, and bumping the version, on the rows
+     * matching {@code where}. Joins the current transaction or runs in its own.
+     *
+     * @return the number of rows updated
+     */
+    private int executeUpdate(Map<String, Object> changes,
+                              BiFunction<CriteriaBuilder, Root<Patient>, Predicate> where) {
+        try {
+            return transactionTemplate.execute(status -> {
+                CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+                CriteriaUpdate<Patient> update = builder.createCriteriaUpdate(Patient.class);
+                Root<Patient> root = update.from(Patient.class);
+                changes.forEach(update::set);
+                Path<Long> version = root.get("version");
+                update.set(version, builder.sum(version, 1L));
+                update.where(where.apply(builder, root));
+                return entityManager.createQuery(update).executeUpdate();
+            });
+        } catch (ConstraintViolationException | DataIntegrityViolationException e) {
+            // The unique index on the CIN is the only constraint not validated beforehand
+            String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            LOGGER.error("Patient update rejected by the database: {}",
+                    message != null ? message.lines().findFirst().orElse(message) : e.getClass().getSimpleName());
+            throw new IllegalArgumentException("CIN already in use or invalid patient data", e);
+        }
+    }
+
+    private void applyChanges(PatientDTO dto, Map<String, Object> changes) {
+        changes.forEach((field, value) -> {
+            switch (field) {
+                case "nom" -> dto.setNom((String) value);
+                case "prenom" -> dto.setPrenom((String) value);
+                case "dateNaissance" -> dto.setDateNaissance(dateToLocalDate((Date) value));
+                case "cin" -> dto.setCin((String) value);
+                case "sexe" -> dto.setSexe((String) value);
+                case "adresse" -> dto.setAdresse((String) value);
+                case "typedesoin" -> dto.setTypedesoin((String) value);
+                case "inp" -> dto.setInp((String) value);
+                default -> throw new IllegalStateException("Unexpected field " + field);
+            }
+        });
+    }
 
-        return convertToDTO(patientRepository.save(patient));
+    private LocalDate parseDate(String value) {
+        try {
+            return value != null ? LocalDate.parse(value) : null;
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value);
+        }
     }
 
     public byte[] generateCnssPdf(Integer id) throws IOException {
@@ -95,7 +464,22 @@ public class PatientService {
         }
     }
 
-    private void validatePatientDTO(PatientDTO dto) {
+    /**
+     * Whether a patient already has this CIN. Most new CINs are ruled out by the in-memory filter
+     * without querying the database.
+     */
+    boolean cinExists(String cin) {
+        return cin != null && !cin.isBlank() && cinFilter.mightContain(cin) && patientRepository.existsByCin(cin);
+    }
+
+    private void checkCinAvailable(String cin) {
+        if (cinExists(cin)) {
+            LOGGER.error("Patient CIN already in use: {}", cin);
+            throw new IllegalArgumentException("A patient with CIN " + cin + " already exists");
+        }
+    }
+
+    void validatePatientDTO(PatientDTO dto) {
         if (dto == null) {
             LOGGER.error("PatientDTO is null");
             throw new IllegalArgumentException("PatientDTO cannot be null");
@@ -110,7 +494,7 @@ public class PatientService {
         }
     }
 
-    private PatientDTO convertToDTO(Patient patient) {
+    PatientDTO convertToDTO(Patient patient) {
         PatientDTO dto = new PatientDTO();
         dto.setId(patient.getId());
         dto.setNom(patient.getNom());
@@ -121,10 +505,11 @@ public class PatientService {
         dto.setTypedesoin(patient.getTypedesoin());
         dto.setInp(patient.getInp());
         dto.setDateNaissance(dateToLocalDate(patient.getDateNaissance()));
+        dto.setVersion(patient.getVersion());
         return dto;
     }
 
-    private Patient convertToEntity(PatientDTO dto) {
+    Patient convertToEntity(PatientDTO dto) {
         Patient patient = new Patient();
         patient.setId(dto.getId());
         patient.setNom(dto.getNom());
@@ -0,0 +1,124 @@
+package com.topaz.back.services;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfSmartCopy;
+import com.topaz.back.dtos.PatientDTO;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders CNSS forms for many patients in parallel and merges them into a single document.
+ * Pages are merged with {@link PdfSmartCopy} so the template's background and fonts are written
+ * once for the whole batch, and each form is written to the output as soon as it is rendered.
+ */
+@Service
+public class PdfBatchService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PdfBatchService.class);
+
+    private final PdfRenderCache pdfRenderCache;
+    private final ExecutorService executor;
+    private final int window;
+
+    public PdfBatchService(PdfRenderCache pdfRenderCache,
+                           @Value("${pdf.render.threads:0}") int threads) {
+        this.pdfRenderCache = pdfRenderCache;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "pdf-render-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Keep a few forms ahead of the writer, but never the whole batch in memory
+        this.window = poolSize * 2;
+        LOGGER.info("PDF batch renderer started with {} thread(s)", poolSize);
+    }
+
+    /**
+     * Render the CNSS form of every patient, in the given order, into one PDF written to {@code out}
+     */
+    public void writeCnssBatch(List<PatientDTO> patients, OutputStream out) throws IOException {
+        LOGGER.info("Rendering CNSS batch of {} patient(s)", patients.size());
+        long start = System.currentTimeMillis();
+        LocalDate renderDate = LocalDate.now();
+
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        Iterator<PatientDTO> remaining = patients.iterator();
+        Document document = new Document();
+        try {
+            PdfCopy copy = new PdfSmartCopy(document, out);
+            copy.setCloseStream(false);
+            document.open();
+
+            while (remaining.hasNext() || !pending.isEmpty()) {
+                while (remaining.hasNext() && pending.size() < window) {
+                    PatientDTO patient = remaining.next();
+                    pending.add(executor.submit(() -> pdfRenderCache.getOrRender(patient, renderDate)));
+                }
+                appendPages(copy, await(pending.poll()));
+                copy.flush();
+            }
+
+            document.close();
+            LOGGER.info("CNSS batch of {} patient(s) rendered in {} ms",
+                    patients.size(), System.currentTimeMillis() - start);
+        } catch (DocumentException e) {
+            LOGGER.error("PDF document error: {}", e.getMessage(), e);
+            throw new IOException("PDF document error: " + e.getMessage(), e);
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void appendPages(PdfCopy copy, byte[] pdf) throws IOException, DocumentException {
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+                copy.addPage(copy.getImportedPage(reader, page));
+            }
+            copy.freeReader(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while rendering CNSS batch", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Unexpected error rendering CNSS batch: " + cause.getMessage(), cause);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,178 @@
+package com.topaz.back.services;
+
+import com.topaz.back.dtos.PatientDTO;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders CNSS forms in the background on a dedicated, bounded pool so that printing load never
+ * occupies the servlet threads serving regular API calls. When the queue is full new jobs are
+ * rejected instead of piling up; finished jobs are kept for a limited time only.
+ */
+@Service
+public class PdfJobService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PdfJobService.class);
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    private final PdfRenderCache pdfRenderCache;
+    private final ThreadPoolExecutor executor;
+    private final Duration resultTtl;
+    private final Map<String, PdfJob> jobs = new ConcurrentHashMap<>();
+
+    public PdfJobService(PdfRenderCache pdfRenderCache,
+                         @Value("${pdf.jobs.threads:2}") int threads,
+                         @Value("${pdf.jobs.queue-capacity:100}") int queueCapacity,
+                         @Value("${pdf.jobs.result-ttl-minutes:10}") long resultTtlMinutes) {
+        this.pdfRenderCache = pdfRenderCache;
+        this.resultTtl = Duration.ofMinutes(resultTtlMinutes);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pdf-job-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        LOGGER.info("PDF job queue started with {} worker(s) and capacity {}", threads, queueCapacity);
+    }
+
+    /**
+     * Queue the rendering of a patient's CNSS form
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public PdfJob submit(PatientDTO patient) {
+        PdfJob job = new PdfJob(UUID.randomUUID().toString(), patient.getId());
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, patient));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            LOGGER.warn("PDF job queue full, rejecting job for patient id: {}", patient.getId());
+            throw e;
+        }
+        LOGGER.info("Queued PDF job {} for patient id: {} (queue depth {})",
+                job.getId(), patient.getId(), executor.getQueue().size());
+        return job;
+    }
+
+    public Optional<PdfJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * Completes with the job once it is finished, or after {@code wait} with the job as it is then
+     */
+    public CompletableFuture<PdfJob> awaitJob(PdfJob job, Duration wait) {
+        if (wait.isZero() || job.isFinished()) {
+            return CompletableFuture.completedFuture(job);
+        }
+        return job.completion.copy().completeOnTimeout(job, wait.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private void run(PdfJob job, PatientDTO patient) {
+        job.status = Status.RUNNING;
+        Status outcome;
+        try {
+            job.result = pdfRenderCache.getOrRender(patient, LocalDate.now());
+            outcome = Status.DONE;
+            LOGGER.info("PDF job {} completed for patient id: {}", job.getId(), patient.getId());
+        } catch (Exception e) {
+            job.error = e.getMessage();
+            outcome = Status.FAILED;
+            LOGGER.error("PDF job {} failed for patient id: {}: {}", job.getId(), patient.getId(), e.getMessage());
+        }
+        // finishedAt must be visible before the job reports itself as finished
+        job.finishedAt = Instant.now();
+        job.status = outcome;
+        job.completion.complete(job);
+    }
+
+    @Scheduled(fixedDelayString = "${pdf.jobs.cleanup-interval-ms:60000}")
+    public void purgeExpiredJobs() {
+        Instant cutoff = Instant.now().minus(resultTtl);
+        int before = jobs.size();
+        jobs.values().removeIf(job -> job.isFinished() && job.finishedAt.isBefore(cutoff));
+        if (jobs.size() < before) {
+            LOGGER.debug("Purged {} expired PDF job(s)", before - jobs.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static final class PdfJob {
+        private final String id;
+        private final Integer patientId;
+        private final Instant createdAt = Instant.now();
+        private final CompletableFuture<PdfJob> completion = new CompletableFuture<>();
+        private volatile Status status = Status.QUEUED;
+        private volatile Instant finishedAt;
+        private volatile byte[] result;
+        private volatile String error;
+
+        private PdfJob(String id, Integer patientId) {
+            this.id = id;
+            this.patientId = patientId;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Integer getPatientId() {
+            return patientId;
+        }
+
+        public Instant getCreatedAt() {
+            return createdAt;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public Instant getFinishedAt() {
+            return finishedAt;
+        }
+
+        public byte[] getResult() {
+            return result;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isFinished() {
+            return status == Status.DONE || status == Status.FAILED;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.topaz.back.services;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfStamper;
+import com.lowagie.text.pdf.PdfWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Content drawn once into a one-page PDF and then stamped onto any number of documents.
+ * Each document imports the page as a form XObject, so the drawing operations are never
+ * repeated and identical overlays are shared when documents are merged.
+ */
+public final class PdfOverlay {
+
+    private final PdfReader master;
+    private final int size;
+
+    private PdfOverlay(byte[] bytes) throws IOException {
+        this.master = new PdfReader(bytes);
+        this.size = bytes.length;
+    }
+
+    /**
+     * Draw an overlay covering a page of the given size
+     */
+    public static PdfOverlay draw(Rectangle pageSize, Painter painter) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Document document = new Document(pageSize, 0, 0, 0, 0);
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, baos);
+            document.open();
+            painter.paint(writer.getDirectContent());
+            document.close();
+        } catch (DocumentException e) {
+            throw new IOException("Could not draw PDF overlay: " + e.getMessage(), e);
+        }
+        return new PdfOverlay(baos.toByteArray());
+    }
+
+    /**
+     * Place the overlay on a page of the stamped document, at the page origin
+     */
+    public void stampOnto(PdfStamper stamper, int page) {
+        // The stamper keeps a reference to the reader until it is closed, so each document
+        // imports from its own cheap copy of the parsed overlay
+        stamper.getOverContent(page).addTemplate(stamper.getImportedPage(new PdfReader(master), 1), 0, 0);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    @FunctionalInterface
+    public interface Painter {
+        void paint(PdfContentByte canvas) throws DocumentException, IOException;
+    }
+}
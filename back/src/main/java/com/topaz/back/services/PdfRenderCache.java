@@ -0,0 +1,182 @@
+package com.topaz.back.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.topaz.back.dtos.PatientDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Bounded cache of rendered CNSS PDFs. A rendered form only depends on the patient data, the
+ * Unicode font used for non-Latin text, the stamp mode and the date printed in the signature
+ * fields, so entries are keyed on the patient id, a fingerprint of the patient data, font and
+ * stamp mode, and the render date. The same key is used to build an ETag, which lets clients
+ * revalidate a form without it being rendered again. The ETag is weak: a form rendered again
+ * after eviction looks the same but gets a new document ID and modification date.
+ */
+@Service
+public class PdfRenderCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PdfRenderCache.class);
+
+    // Bump when the rendering output changes so clients do not keep stale forms
+    private static final String RENDER_REVISION = "cnss-2";
+
+    private final PdfService pdfService;
+    private final PdfTemplateRegistry templateRegistry;
+    private final boolean enabled;
+    private final Cache<RenderKey, byte[]> cache;
+    // Patient id -> keys of its cached forms, so evicting a patient does not scan the whole cache
+    private final Map<Integer, Set<RenderKey>> keysByPatient = new ConcurrentHashMap<>();
+
+    public PdfRenderCache(PdfService pdfService,
+                          PdfTemplateRegistry templateRegistry,
+                          @Value("${pdf.cache.enabled:true}") boolean enabled,
+                          @Value("${pdf.cache.max-size-mb:64}") long maxSizeMb) {
+        this.pdfService = pdfService;
+        this.templateRegistry = templateRegistry;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeMb * 1024 * 1024)
+                .weigher((RenderKey key, byte[] pdf) -> pdf.length)
+                // The render date is part of the key, yesterday's forms are never served again
+                .expireAfterWrite(Duration.ofDays(1))
+                // Called synchronously for entries dropped by size or age
+                .evictionListener((RenderKey key, byte[] pdf, RemovalCause cause) -> forget(key))
+                .recordStats()
+                .build();
+        LOGGER.info("PDF render cache {} (max {} MB)", enabled ? "enabled" : "disabled", maxSizeMb);
+    }
+
+    /**
+     * Weak ETag for the CNSS form of this patient rendered on the given date
+     */
+    public String etag(PatientDTO patient, LocalDate renderDate) {
+        return "W/\"" + key(patient, renderDate).hash() + "\"";
+    }
+
+    /**
+     * Returns the cached form, or renders and caches it
+     */
+    public byte[] getOrRender(PatientDTO patient, LocalDate renderDate) throws IOException {
+        RenderKey key = key(patient, renderDate);
+        byte[] pdf = enabled ? cache.getIfPresent(key) : null;
+        if (pdf != null) {
+            LOGGER.debug("PDF cache hit for patient id: {}", patient.getId());
+            return pdf;
+        }
+        pdf = pdfService.generateCnssPdfWithPatientData(patient, renderDate);
+        if (enabled) {
+            // Indexed first, so that an eviction of the patient racing with this put still finds it
+            remember(key);
+            cache.put(key, pdf);
+        }
+        return pdf;
+    }
+
+    /**
+     * Writes the form to the stream. When caching is disabled the form is streamed as it is rendered.
+     */
+    public void writeCnssPdf(PatientDTO patient, LocalDate renderDate, OutputStream out) throws IOException {
+        if (!enabled) {
+            pdfService.writeCnssPdf(patient, renderDate, out);
+            return;
+        }
+        out.write(getOrRender(patient, renderDate));
+        out.flush();
+    }
+
+    /**
+     * Drop every cached form of a patient, whatever its version or render date
+     */
+    public void evictPatient(Integer patientId) {
+        Set<RenderKey> keys = keysByPatient.remove(patientId);
+        if (keys != null) {
+            cache.invalidateAll(keys);
+            LOGGER.debug("Evicted {} cached PDF(s) for patient id: {}", keys.size(), patientId);
+        }
+    }
+
+    /**
+     * Drop every cached form of the given patients
+     */
+    public void evictPatients(Collection<Integer> patientIds) {
+        patientIds.forEach(this::evictPatient);
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    private void remember(RenderKey key) {
+        keysByPatient.compute(key.patientId(), (id, keys) -> {
+            Set<RenderKey> set = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            set.add(key);
+            return set;
+        });
+    }
+
+    private void forget(RenderKey key) {
+        keysByPatient.computeIfPresent(key.patientId(), (id, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    private RenderKey key(PatientDTO patient, LocalDate renderDate) {
+        return new RenderKey(patient.getId(), contentVersion(patient), renderDate);
+    }
+
+    /**
+     * Fingerprint of every patient field printed on the form, of the font non-Latin text is drawn
+     * with (without one, that text is left out) and of the stamp mode, which changes the file layout
+     */
+    private String contentVersion(PatientDTO patient) {
+        String content = Stream.of(RENDER_REVISION, templateRegistry.getUnicodeFontId(),
+                        pdfService.getStampMode(), patient.getNom(), patient.getPrenom(),
+                        patient.getDateNaissance(), patient.getCin(), patient.getSexe(), patient.getAdresse(),
+                        patient.getTypedesoin(), patient.getInp())
+                .map(value -> Objects.toString(value, ""))
+                .reduce((left, right) -> left + '\u001f' + right)
+                .orElse("");
+        return sha256(content);
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record RenderKey(Integer patientId, String contentVersion, LocalDate renderDate) {
+        String hash() {
+            return sha256(patientId + "|" + contentVersion + "|" + renderDate).substring(0, 32);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.topaz.back.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.PdfReader;
+import com.topaz.back.dtos.FormLayout;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads every form layout and its PDF template once at startup. The template is kept both as raw
+ * bytes and as a parsed document, and each layout is compiled into a {@link FormRenderPlan}.
+ * Callers get a cheap, independent reader per request instead of re-reading and re-parsing the
+ * template from the classpath.
+ * <p>
+ * Text the layout font cannot encode (Arabic names, letters outside Cp1252) is drawn with an
+ * embedded Unicode font. Its program is parsed once and shared; each document only embeds the
+ * subset of glyphs it actually uses.
+ */
+@Service
+public class PdfTemplateRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PdfTemplateRegistry.class);
+
+    public static final String CNSS_TEMPLATE = "cnss";
+
+    // Layout name -> classpath location of its descriptor
+    private static final Map<String, String> LAYOUT_PATHS = Map.of(
+            CNSS_TEMPLATE, "/templates/cnss_form_layout.json"
+    );
+
+    // Tried in order when pdf.fonts.unicode-path is not set; all of them cover Arabic
+    private static final List<String> UNICODE_FONT_CANDIDATES = List.of(
+            "/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf",
+            "/usr/share/fonts/dejavu/DejaVuSans.ttf",
+            "/usr/share/fonts/truetype/noto/NotoSansArabic-Regular.ttf",
+            "C:/Windows/Fonts/arial.ttf",
+            "/Library/Fonts/Arial Unicode.ttf"
+    );
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, PdfTemplate> templates = new ConcurrentHashMap<>();
+    private final Map<String, FormRenderPlan> plans = new ConcurrentHashMap<>();
+    private final Map<String, BaseFont> fonts = new ConcurrentHashMap<>();
+
+    @Value("${pdf.fonts.unicode-path:}")
+    private String unicodeFontPath;
+
+    private BaseFont unicodeFont;
+    // SHA-256 of the Unicode font file, null when there is none
+    private String unicodeFontId;
+
+    @PostConstruct
+    public void init() throws IOException {
+        unicodeFont = loadUnicodeFont();
+
+        LOGGER.info("Loading PDF form layouts");
+        for (Map.Entry<String, String> entry : LAYOUT_PATHS.entrySet()) {
+            FormLayout layout = loadLayout(entry.getValue());
+            PdfTemplate template = templates.get(layout.getTemplate());
+            if (template == null) {
+                template = loadTemplate(layout.getTemplate());
+                templates.put(layout.getTemplate(), template);
+            }
+            BaseFont font = getFont(layout.getFont().getName(), layout.getFont().getEncoding());
+            plans.put(entry.getKey(), FormRenderPlan.compile(layout, template, font, unicodeFont));
+            LOGGER.info("Compiled form layout '{}' with {} field(s)", entry.getKey(), layout.getFields().size());
+        }
+        LOGGER.info("Loaded {} PDF template(s)", templates.size());
+    }
+
+    /**
+     * Returns the compiled render plan registered under the given name
+     */
+    public FormRenderPlan getPlan(String name) throws IOException {
+        FormRenderPlan plan = plans.get(name);
+        if (plan == null) {
+            throw new IOException("PDF form layout not registered: " + name);
+        }
+        return plan;
+    }
+
+    /**
+     * Returns a shared, non-embedded font. Fonts are created once and reused by every document.
+     */
+    public BaseFont getFont(String name, String encoding) throws IOException {
+        try {
+            return fonts.computeIfAbsent(name + "|" + encoding, key -> {
+                try {
+                    return BaseFont.createFont(name, encoding, BaseFont.NOT_EMBEDDED);
+                } catch (DocumentException | IOException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            throw new IOException("Could not create font " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the shared embedded Unicode font, or null when none could be loaded
+     */
+    public BaseFont getUnicodeFont() {
+        return unicodeFont;
+    }
+
+    /**
+     * Identifies the loaded Unicode font file (a hash of its content), or null when none could be
+     * loaded. Forms rendered with another font, or without one, differ for non-Latin text.
+     */
+    public String getUnicodeFontId() {
+        return unicodeFontId;
+    }
+
+    private BaseFont loadUnicodeFont() throws IOException {
+        List<String> candidates = unicodeFontPath != null && !unicodeFontPath.isBlank()
+                ? List.of(unicodeFontPath)
+                : UNICODE_FONT_CANDIDATES;
+        for (String candidate : candidates) {
+            Path path = Path.of(candidate);
+            if (!Files.isReadable(path)) {
+                continue;
+            }
+            try {
+                // Created from the file bytes so the font program stays in memory, instead of the
+                // file being reopened every time a document writes its subset
+                byte[] program = Files.readAllBytes(path);
+                BaseFont font = BaseFont.createFont(path.getFileName().toString(), BaseFont.IDENTITY_H,
+                        BaseFont.EMBEDDED, false, program, null);
+                font.setSubset(true);
+                unicodeFontId = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(program));
+                LOGGER.info("Loaded Unicode font {} for non-Latin text", path);
+                return font;
+            } catch (DocumentException e) {
+                throw new IOException("Could not load Unicode font " + path + ": " + e.getMessage(), e);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+        if (unicodeFontPath != null && !unicodeFontPath.isBlank()) {
+            throw new IOException("Unicode font not readable: " + unicodeFontPath);
+        }
+        LOGGER.warn("No Unicode font found, text outside Cp1252 (e.g. Arabic) will not be rendered");
+        return null;
+    }
+
+    private FormLayout loadLayout(String path) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(path)) {
+            if (in == null) {
+                LOGGER.error("Form layout not found at {}", path);
+                throw new IOException("Form layout not found: " + path);
+            }
+            return objectMapper.readValue(in, FormLayout.class);
+        }
+    }
+
+    private PdfTemplate loadTemplate(String path) throws IOException {
+        try (InputStream in = getClass().getResourceAsStream(path)) {
+            if (in == null) {
+                LOGGER.error("Template not found at {}", path);
+                throw new IOException("PDF template not found: " + path);
+            }
+            byte[] bytes = in.readAllBytes();
+            PdfTemplate template = new PdfTemplate(path, bytes, new PdfReader(bytes));
+            LOGGER.info("Loaded PDF template {} ({} bytes, {} page(s))",
+                    path, bytes.length, template.getNumberOfPages());
+            return template;
+        }
+    }
+
+    /**
+     * An immutable, pre-parsed form template. The master reader is never handed out or
+     * modified; every render works on its own copy obtained from {@link #newReader()}.
+     */
+    public static final class PdfTemplate {
+        private final String path;
+        private final byte[] bytes;
+        private final PdfReader master;
+
+        private PdfTemplate(String path, byte[] bytes, PdfReader master) {
+            this.path = path;
+            this.bytes = bytes;
+            this.master = master;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public int getSize() {
+            return bytes.length;
+        }
+
+        public int getNumberOfPages() {
+            return master.getNumberOfPages();
+        }
+
+        public Rectangle getPageSize(int page) {
+            return master.getPageSize(page);
+        }
+
+        /**
+         * Creates an independent reader by duplicating the already parsed objects,
+         * which is much cheaper than parsing the template bytes again.
+         */
+        public PdfReader newReader() {
+            return new PdfReader(master);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.topaz.back.services;
+
+import com.topaz.back.dtos.PasswordHashingStatsDTO;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * BCrypt password encoder running every hash on a dedicated, bounded pool, so that a burst of
+ * logins can only use a fixed number of cores and never the servlet threads' share of the CPU.
+ * A hash that cannot be queued, or waits in the queue longer than the configured timeout, fails
+ * with {@link RejectedExecutionException} for the caller to answer 503.
+ * <p>
+ * Hashes stored with a lower work factor than the configured one are reported by
+ * {@link #upgradeEncoding(String)}, so they are rehashed on the next successful login.
+ */
+@Service
+public class PooledPasswordEncoder implements PasswordEncoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledPasswordEncoder.class);
+
+    private final BCryptPasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final int strength;
+    private final long queueTimeoutMillis;
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAccumulator maxHashNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public PooledPasswordEncoder(@Value("${security.password.bcrypt-strength:10}") int strength,
+                                 @Value("${security.password.threads:0}") int threads,
+                                 @Value("${security.password.queue-capacity:100}") int queueCapacity,
+                                 @Value("${security.password.queue-timeout-ms:2000}") long queueTimeoutMillis) {
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        // 0 means half the cores, leaving the rest to the API
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        LOGGER.info("Password hashing pool started with {} worker(s), capacity {}, {} ms queue timeout, BCrypt strength {}",
+                poolSize, queueCapacity, queueTimeoutMillis, strength);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * Whether the hash was made with a lower work factor than the configured one. Only reads the
+     * hash prefix, so it runs on the caller's thread.
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    public PasswordHashingStatsDTO getStats() {
+        long count = hashes.sum();
+        return PasswordHashingStatsDTO.builder()
+                .strength(strength)
+                .threads(executor.getMaximumPoolSize())
+                .activeHashes(executor.getActiveCount())
+                .queueDepth(executor.getQueue().size())
+                .hashes(count)
+                .averageHashMillis(count == 0 ? 0 : hashNanos.sum() / 1e6 / count)
+                .maxHashMillis(maxHashNanos.get() / 1e6)
+                .averageQueueWaitMillis(count == 0 ? 0 : queueWaitNanos.sum() / 1e6 / count)
+                .rejected(rejected.sum())
+                .build();
+    }
+
+    /**
+     * Run a hash on the pool and wait for it. It is abandoned if it has not started within the queue
+     * timeout; once started it is always waited for, a single hash being short.
+     */
+    private <T> T run(Supplier<T> hash) {
+        long queuedAt = System.nanoTime();
+        // Set by whichever comes first: the worker starting the hash, or the caller giving up on it
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                long startedAt = System.nanoTime();
+                queueWaitNanos.add(startedAt - queuedAt);
+                try {
+                    return hash.get();
+                } finally {
+                    long elapsed = System.nanoTime() - startedAt;
+                    hashes.increment();
+                    hashNanos.add(elapsed);
+                    maxHashNanos.accumulate(elapsed);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            LOGGER.warn("Password hashing queue full ({} waiting)", executor.getQueue().size());
+            throw e;
+        }
+        try {
+            try {
+                return future.get(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (claimed.compareAndSet(false, true)) {
+                    future.cancel(false);
+                    executor.remove((Runnable) future);
+                    rejected.increment();
+                    LOGGER.warn("Password hash waited more than {} ms in the queue, giving up", queueTimeoutMillis);
+                    throw new RejectedExecutionException("Password hashing queue timed out");
+                }
+                return future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
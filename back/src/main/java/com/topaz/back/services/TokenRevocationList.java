@@ -0,0 +1,110 @@
+package com.topaz.back.services;
+
+import com.topaz.back.entities.RevokedToken;
+import com.topaz.back.repositories.RevokedTokenRepository;
+import io.jsonwebtoken.Claims;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ids ({@code jti}) of the tokens revoked by a logout, until those tokens expire. Checking a token
+ * is a lookup in memory; revocations are also stored in the database and reloaded at startup, and
+ * both copies are purged of expired tokens periodically.
+ * <p>
+ * Only tokens with a {@code jti} can be revoked, which is every token {@link JwtService} issues.
+ */
+@Service
+public class TokenRevocationList {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    // jti -> expiration of the token, in epoch milliseconds
+    private final Map<UUID, Long> revoked = new ConcurrentHashMap<>();
+
+    public TokenRevocationList(RevokedTokenRepository revokedTokenRepository) {
+        this.revokedTokenRepository = revokedTokenRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        for (RevokedToken token : revokedTokenRepository.findByExpiresAtAfter(Instant.now())) {
+            UUID jti = parse(token.getJti());
+            if (jti != null) {
+                revoked.put(jti, token.getExpiresAt().toEpochMilli());
+            }
+        }
+        LOGGER.info("Loaded {} revoked token(s)", revoked.size());
+    }
+
+    /**
+     * Revoke a verified token until it expires
+     *
+     * @throws IllegalArgumentException when the token has no usable jti or no expiration
+     */
+    public void revoke(Claims claims) {
+        UUID jti = parse(claims.getId());
+        if (jti == null || claims.getExpiration() == null) {
+            throw new IllegalArgumentException("Token cannot be revoked");
+        }
+        Instant expiresAt = claims.getExpiration().toInstant();
+        revokedTokenRepository.save(RevokedToken.builder()
+                .jti(jti.toString())
+                .username(claims.getSubject())
+                .expiresAt(expiresAt)
+                .revokedAt(Instant.now())
+                .build());
+        revoked.put(jti, expiresAt.toEpochMilli());
+        LOGGER.info("Revoked token {} of user {}", jti, claims.getSubject());
+    }
+
+    public boolean isRevoked(Claims claims) {
+        String id = claims.getId();
+        if (id == null || revoked.isEmpty()) {
+            return false;
+        }
+        UUID jti = parse(id);
+        return jti != null && revoked.containsKey(jti);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    /**
+     * Forget the tokens that have expired since they were revoked; they are refused as expired anyway
+     */
+    @Scheduled(initialDelayString = "${jwt.revocation.purge-interval-ms:600000}",
+            fixedDelayString = "${jwt.revocation.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        int before = revoked.size();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+        try {
+            int deleted = revokedTokenRepository.deleteExpired(Instant.ofEpochMilli(now));
+            LOGGER.debug("Purged {} expired revocation(s) from memory and {} from the database",
+                    before - revoked.size(), deleted);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not purge expired revocations: {}", e.getMessage(), e);
+        }
+    }
+
+    private static UUID parse(String jti) {
+        if (jti == null) {
+            return null;
+        }
+        try {
+            return UUID.fromString(jti);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
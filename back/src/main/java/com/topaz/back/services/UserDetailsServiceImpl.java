@@ -1,22 +1,49 @@
 package com.topaz.back.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.topaz.back.entities.User;
 import com.topaz.back.repositories.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+
+/**
+ * Loads users for authentication through a bounded cache. Entries expire after a fixed time and
+ * are dropped by {@link UserService} whenever it writes a user, so a role or password change is
+ * seen on the next request. Unknown usernames are not cached.
+ * <p>
+ * Also stores the new hash when a login rehashes a password made with an outdated work factor.
+ */
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UserDetailsServiceImpl.class);
     private final UserRepository userRepository;
+    private final boolean cacheEnabled;
+    private final Cache<String, User> users;
 
-    public UserDetailsServiceImpl(UserRepository userRepository) {
+    public UserDetailsServiceImpl(UserRepository userRepository,
+                                  @Value("${users.cache.enabled:true}") boolean cacheEnabled,
+                                  @Value("${users.cache.max-size:1000}") long maxSize,
+                                  @Value("${users.cache.ttl-minutes:5}") long ttlMinutes) {
         this.userRepository = userRepository;
+        this.cacheEnabled = cacheEnabled;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .recordStats()
+                .build();
+        LOGGER.info("User details cache {} (max {} users, {} min TTL)", cacheEnabled ? "enabled" : "disabled",
+                maxSize, ttlMinutes);
     }
 
     @Override
@@ -25,7 +52,47 @@ public class UserDetailsServiceImpl implements UserDetailsService {
             LOGGER.error("Username is null or empty");
             throw new UsernameNotFoundException("Username cannot be null or empty");
         }
+        if (!cacheEnabled) {
+            return load(username);
+        }
+        // Loading under the cache lock means an eviction issued meanwhile waits and then drops the
+        // loaded user. Callers get their own copy, so nothing they change reaches the cache.
+        return users.get(username, this::load).toBuilder().build();
+    }
+
+    /**
+     * Store a user's password hashed again with the current work factor. The password itself is
+     * unchanged, so the user's tokens stay valid.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new UsernameNotFoundException("Utilisateur non trouvé: " + userDetails.getUsername()));
+        user.setPassword(newPassword);
+        User saved = userRepository.save(user);
+        evict(saved.getUsername());
+        LOGGER.info("Rehashed password of user {} with the current work factor", saved.getUsername());
+        return saved;
+    }
+
+    /**
+     * Drop the cached user, to be called after the user is written
+     */
+    public void evict(String username) {
+        if (username != null) {
+            users.invalidate(username);
+        }
+    }
+
+    public CacheStats getStats() {
+        return users.stats();
+    }
+
+    public long getSize() {
+        return users.estimatedSize();
+    }
 
+    private User load(String username) {
         LOGGER.debug("Loading user: {}", username);
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> {
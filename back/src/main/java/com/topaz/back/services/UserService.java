@@ -3,12 +3,16 @@ package com.topaz.back.services;
 import com.topaz.back.dtos.RegisterRequest;
 import com.topaz.back.entities.User;
 import com.topaz.back.repositories.UserRepository;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
 @Service
 @RequiredArgsConstructor
 public class UserService {
@@ -17,6 +21,8 @@ public class UserService {
     
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserTokenStamps userTokenStamps;
+    private final UserDetailsServiceImpl userDetailsService;
 
     public User register(RegisterRequest request) {
         logger.info("Registering new user: {}", request.getUsername());
@@ -33,7 +39,57 @@ public class UserService {
                 .build();
         
         User savedUser = userRepository.save(user);
+        userDetailsService.evict(savedUser.getUsername());
         logger.info("User registered successfully: {}", savedUser.getUsername());
         return savedUser;
     }
+
+    /**
+     * Give the user another role. Tokens issued before the change stop being accepted, since they
+     * carry the previous roles.
+     */
+    public User changeRole(String username, String role) {
+        logger.info("Changing role of user: {}", username);
+        if (role == null || role.trim().isEmpty()) {
+            throw new IllegalArgumentException("Role cannot be null or empty");
+        }
+        String normalized = role.trim().toUpperCase();
+        if (normalized.startsWith("ROLE_")) {
+            normalized = normalized.substring("ROLE_".length());
+        }
+        User user = findUser(username);
+        user.setRole(normalized);
+        return invalidateTokens(user);
+    }
+
+    /**
+     * Set a new password. Tokens issued before the change stop being accepted.
+     */
+    public void changePassword(String username, String password) {
+        logger.info("Changing password of user: {}", username);
+        if (password == null || password.isEmpty()) {
+            throw new IllegalArgumentException("Password cannot be null or empty");
+        }
+        User user = findUser(username);
+        user.setPassword(passwordEncoder.encode(password));
+        invalidateTokens(user);
+    }
+
+    private User findUser(String username) {
+        return userRepository.findByUsername(username)
+                .orElseThrow(() -> {
+                    logger.warn("User not found: {}", username);
+                    return new EntityNotFoundException("User not found: " + username);
+                });
+    }
+
+    private User invalidateTokens(User user) {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        user.setTokensValidAfter(now);
+        User saved = userRepository.save(user);
+        userDetailsService.evict(saved.getUsername());
+        userTokenStamps.stamp(saved.getUsername(), now);
+        logger.info("Tokens of user {} issued before {} are no longer accepted", saved.getUsername(), now);
+        return saved;
+    }
 }
@@ -0,0 +1,59 @@
+package com.topaz.back.services;
+
+import com.topaz.back.entities.User;
+import com.topaz.back.repositories.UserRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * For each user whose role or password changed, the time before which their tokens are no longer
+ * accepted. Kept in memory so that checking a token costs a map lookup instead of loading the
+ * user; the stamps are stored on the users as well and reloaded at startup. Only users that ever
+ * had a change have an entry.
+ */
+@Service
+public class UserTokenStamps {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserTokenStamps.class);
+
+    private final UserRepository userRepository;
+    // Username -> epoch millisecond of the last change
+    private final Map<String, Long> validAfter = new ConcurrentHashMap<>();
+
+    public UserTokenStamps(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @PostConstruct
+    public void load() {
+        for (User user : userRepository.findByTokensValidAfterIsNotNull()) {
+            validAfter.put(user.getUsername(), user.getTokensValidAfter().toEpochMilli());
+        }
+        LOGGER.info("Loaded token validity stamps for {} user(s)", validAfter.size());
+    }
+
+    /**
+     * Record that tokens issued before {@code changedAt} are no longer valid for the user
+     */
+    public void stamp(String username, Instant changedAt) {
+        validAfter.merge(username, changedAt.toEpochMilli(), Math::max);
+    }
+
+    /**
+     * Whether a token of the user issued at {@code issuedAtMillis} was issued after their last
+     * change. One issued in the same millisecond as the change is treated as issued before it.
+     */
+    public boolean isCurrent(String username, Long issuedAtMillis) {
+        Long stamp = validAfter.get(username);
+        if (stamp == null) {
+            return true;
+        }
+        return issuedAtMillis != null && issuedAtMillis > stamp;
+    }
+}
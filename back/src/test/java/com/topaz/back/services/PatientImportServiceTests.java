@@ -0,0 +1,55 @@
+package com.topaz.back.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.topaz.back.dtos.PatientImportResultDTO;
+import com.topaz.back.entities.Patient;
+import com.topaz.back.repositories.PatientRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PatientImportServiceTests {
+
+	private PatientRepository patientRepository;
+	private PatientImportService importService;
+
+	@BeforeEach
+	void setUp() {
+		PatientService patientService = mock(PatientService.class);
+		when(patientService.convertToEntity(any())).thenAnswer(invocation -> new Patient());
+		patientRepository = mock(PatientRepository.class);
+		// One row per chunk, so the first row is committed before the malformed one is reached
+		importService = new PatientImportService(patientService, mock(PatientSearchIndex.class),
+				mock(CinFilter.class), patientRepository, mock(EntityManager.class), new ObjectMapper(),
+				mock(PlatformTransactionManager.class), 1);
+	}
+
+	@Test
+	void unterminatedQuoteStopsTheImportWithAPartialReport() throws IOException {
+		String csv = "nom,prenom\r\nAlaoui,Fatima\r\n\"Bennani,Omar\r\nTazi,Karim\r\n";
+
+		PatientImportResultDTO result = importService.importCsv(
+				new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(2, result.getTotal());
+		assertEquals(1, result.getImported());
+		assertEquals(1, result.getFailed());
+		assertEquals(2, result.getErrors().get(0).getRow());
+		assertTrue(result.getErrors().get(0).getMessage().startsWith("Unterminated quoted field"));
+		verify(patientRepository, times(1)).saveAll(anyIterable());
+	}
+}
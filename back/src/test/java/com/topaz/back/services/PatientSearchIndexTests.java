@@ -0,0 +1,94 @@
+package com.topaz.back.services;
+
+import com.topaz.back.dtos.PatientDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatientSearchIndexTests {
+
+	private PatientSearchIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new PatientSearchIndex();
+		index.put(patient(1, "Alaoui", "Fatima", "BK123456"));
+		index.put(patient(2, "Alaoui-Tazi", "Omar", "BK654321"));
+		index.put(patient(3, "Chraïbi", "Hélène", "AB998877"));
+		index.put(patient(4, "Slaoui", "Karim", "CD112233"));
+		index.markReady();
+	}
+
+	@Test
+	void exactWordRanksBeforePrefixAndTypo() {
+		assertEquals(List.of(1, 2, 4), ids(index.search("alaoui", 10)));
+		assertEquals(List.of(1, 2), ids(index.search("ala", 10)));
+	}
+
+	@Test
+	void foldsAccentsAndToleratesSwappedLetters() {
+		assertEquals(List.of(3), ids(index.search("helene chraibi", 10)));
+		assertEquals(List.of(3), ids(index.search("chrabii", 10)));
+	}
+
+	@Test
+	void everyQueryWordMustMatch() {
+		assertEquals(List.of(2), ids(index.search("alaoui omar", 10)));
+		assertTrue(index.search("alaoui zineb", 10).isEmpty());
+	}
+
+	@Test
+	void matchesCinByPrefixAndSubstring() {
+		assertEquals(List.of(1), ids(index.search("bk12", 10)));
+		assertEquals(List.of(3), ids(index.search("9988", 10)));
+	}
+
+	@Test
+	void followsUpdatesAndRemovals() {
+		index.put(patient(1, "Bennani", "Fatima", "BK123456"));
+		assertEquals(List.of(2, 4), ids(index.search("alaoui", 10)));
+		assertEquals(List.of(1), ids(index.search("bennani", 10)));
+
+		index.remove(2);
+		assertEquals(List.of(4), ids(index.search("alaoui", 10)));
+		assertEquals(3, index.size());
+	}
+
+	@Test
+	void loadSkipsRowsOlderThanConcurrentWrites() {
+		PatientSearchIndex loading = new PatientSearchIndex();
+		loading.put(patient(1, "Bennani", "Fatima", "BK123456", 2L));
+		loading.remove(2);
+
+		assertFalse(loading.load(patient(1, "Alaoui", "Fatima", "BK123456", 1L)));
+		assertFalse(loading.load(patient(2, "Alaoui-Tazi", "Omar", "BK654321", 1L)));
+		assertTrue(loading.load(patient(3, "Chraïbi", "Hélène", "AB998877", 1L)));
+		loading.markReady();
+
+		assertEquals(List.of(1), ids(loading.search("bennani", 10)));
+		assertTrue(loading.search("alaoui", 10).isEmpty());
+		assertEquals(2, loading.size());
+	}
+
+	@Test
+	void keepsOnlyTheBestResults() {
+		assertEquals(List.of(1), ids(index.search("alaoui", 1)));
+	}
+
+	private static PatientDTO patient(int id, String nom, String prenom, String cin) {
+		return patient(id, nom, prenom, cin, null);
+	}
+
+	private static PatientDTO patient(int id, String nom, String prenom, String cin, Long version) {
+		return new PatientDTO(id, nom, prenom, null, cin, "F", null, null, null, version);
+	}
+
+	private static List<Integer> ids(List<PatientDTO> patients) {
+		return patients.stream().map(PatientDTO::getId).toList();
+	}
+}
@@ -0,0 +1,155 @@
+package com.topaz.back.services;
+
+import com.lowagie.text.pdf.PRStream;
+import com.lowagie.text.pdf.PdfDictionary;
+import com.lowagie.text.pdf.PdfName;
+import com.lowagie.text.pdf.PdfObject;
+import com.lowagie.text.pdf.PdfReader;
+import com.topaz.back.dtos.PatientDTO;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Proves that append-mode stamping produces the same visual output as the full rewrite: every page
+ * is reduced to its decoded content streams and the resources they draw (form XObjects, fonts),
+ * and the two modes must match byte for byte. Append output must also start with the untouched
+ * template bytes.
+ */
+class PdfStampModeComparisonTests {
+
+	private static final LocalDate RENDER_DATE = LocalDate.of(2024, 5, 17);
+
+	private static PdfService rewrite;
+	private static PdfService append;
+	private static byte[] templateBytes;
+
+	@BeforeAll
+	static void setUp() throws IOException {
+		PdfTemplateRegistry templateRegistry = new PdfTemplateRegistry();
+		templateRegistry.init();
+		rewrite = new PdfService(templateRegistry, PdfService.StampMode.REWRITE);
+		append = new PdfService(templateRegistry, PdfService.StampMode.APPEND);
+		try (InputStream in = PdfStampModeComparisonTests.class.getResourceAsStream("/templates/cnss_form_template.pdf")) {
+			templateBytes = in.readAllBytes();
+		}
+	}
+
+	static Stream<PatientDTO> patients() {
+		return Stream.of(
+				new PatientDTO(),
+				new PatientDTO(1, "Alaoui", "Fatima", LocalDate.of(1984, 3, 12), "BE123456",
+						"F", "12 Rue des Orangers, Casablanca", "soin", "INP-0045", null),
+				new PatientDTO(2, "Bennani", "Youssef", LocalDate.of(1975, 11, 2), "AB998877",
+						"M", "Résidence Anfa, Casablanca", "prothèse", "INP-0099", null),
+				new PatientDTO(3, "Tazi", "Omar", null, null, null, null, "implant", null, null)
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource("patients")
+	void appendModeMatchesRewrite(PatientDTO patient) throws IOException {
+		ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+		rewrite.writeCnssPdf(patient, RENDER_DATE, rewritten);
+		ByteArrayOutputStream appended = new ByteArrayOutputStream();
+		append.writeCnssPdf(patient, RENDER_DATE, appended);
+
+		assertVisuallyEqual(rewritten.toByteArray(), appended.toByteArray());
+	}
+
+	@ParameterizedTest
+	@MethodSource("patients")
+	void appendModeKeepsTemplateBytes(PatientDTO patient) throws IOException {
+		ByteArrayOutputStream appended = new ByteArrayOutputStream();
+		append.writeCnssPdf(patient, RENDER_DATE, appended);
+		byte[] output = appended.toByteArray();
+
+		assertTrue(output.length > templateBytes.length);
+		assertArrayEquals(templateBytes, Arrays.copyOf(output, templateBytes.length));
+	}
+
+	@ParameterizedTest
+	@MethodSource("patients")
+	void debugAppendModeMatchesRewrite(PatientDTO patient) throws IOException {
+		ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+		rewrite.writeDebugPdf(patient, rewritten);
+		ByteArrayOutputStream appended = new ByteArrayOutputStream();
+		append.writeDebugPdf(patient, appended);
+
+		assertVisuallyEqual(rewritten.toByteArray(), appended.toByteArray());
+	}
+
+	private static void assertVisuallyEqual(byte[] expected, byte[] actual) throws IOException {
+		PdfReader expectedReader = new PdfReader(expected);
+		PdfReader actualReader = new PdfReader(actual);
+		assertEquals(expectedReader.getNumberOfPages(), actualReader.getNumberOfPages());
+		for (int page = 1; page <= expectedReader.getNumberOfPages(); page++) {
+			assertArrayEquals(canonicalPage(expectedReader, page), canonicalPage(actualReader, page),
+					"Page " + page + " differs");
+		}
+	}
+
+	/**
+	 * The page's decoded content followed by every resource it draws, in a stable order
+	 */
+	private static byte[] canonicalPage(PdfReader reader, int page) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PdfDictionary pageDict = reader.getPageN(page);
+		out.write(pageDict.getAsArray(PdfName.MEDIABOX).toString().getBytes(StandardCharsets.ISO_8859_1));
+		out.write(reader.getPageContent(page));
+		writeResources(pageDict.getAsDict(PdfName.RESOURCES), out);
+		return out.toByteArray();
+	}
+
+	private static void writeResources(PdfDictionary resources, ByteArrayOutputStream out) throws IOException {
+		if (resources == null) {
+			return;
+		}
+		PdfDictionary fonts = resources.getAsDict(PdfName.FONT);
+		if (fonts != null) {
+			for (PdfName name : sorted(fonts)) {
+				PdfDictionary font = fonts.getAsDict(name);
+				write(out, "Font " + name + " " + font.get(PdfName.BASEFONT) + " " + font.get(PdfName.ENCODING));
+			}
+		}
+		PdfDictionary xObjects = resources.getAsDict(PdfName.XOBJECT);
+		if (xObjects != null) {
+			for (PdfName name : sorted(xObjects)) {
+				PdfObject object = PdfReader.getPdfObject(xObjects.get(name));
+				write(out, "XObject " + name);
+				if (object instanceof PRStream stream) {
+					write(out, String.valueOf(stream.get(PdfName.SUBTYPE)) + stream.get(PdfName.BBOX) + stream.get(PdfName.MATRIX));
+					// Images are compared in their encoded form, form XObjects by their decoded content
+					out.write(PdfName.IMAGE.equals(stream.get(PdfName.SUBTYPE))
+							? PdfReader.getStreamBytesRaw(stream)
+							: PdfReader.getStreamBytes(stream));
+					writeResources(stream.getAsDict(PdfName.RESOURCES), out);
+				}
+			}
+		}
+	}
+
+	private static List<PdfName> sorted(PdfDictionary dictionary) {
+		return dictionary.getKeys().stream()
+				.sorted((left, right) -> left.toString().compareTo(right.toString()))
+				.toList();
+	}
+
+	private static void write(ByteArrayOutputStream out, String value) throws IOException {
+		out.write(value.getBytes(StandardCharsets.ISO_8859_1));
+		out.write('\n');
+	}
+}